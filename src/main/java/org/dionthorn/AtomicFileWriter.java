@@ -0,0 +1,212 @@
+package org.dionthorn;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The AtomicFileWriter streams text into a reusable buffer that is written through a FileChannel to a temporary
+ * file next to the target, commit then renames the temporary file over the target in one step.
+ * Readers only ever see the old or the new file, if commit isn't reached the temporary file is deleted on close
+ * and the target is left untouched. Ints are encoded straight into the buffer without building Strings.
+ * Text is encoded with the default charset and lines end with System.lineSeparator() to match getFileLines.
+ */
+public class AtomicFileWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[11];
+    private boolean committed;
+
+    /**
+     * Default Constructor creates the temporary file in the directory of the target file.
+     * @param targetFile the file to replace on commit
+     * @throws IOException if the temporary file can't be created
+     */
+    public AtomicFileWriter(URI targetFile) throws IOException {
+        target = Path.of(targetFile);
+        temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Will write text to the file.
+     * @param text the text to write
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter write(String text) throws IOException {
+        byte[] bytes = text.getBytes();
+        int offset = 0;
+        while(offset < bytes.length) {
+            if(!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+        return this;
+    }
+
+    /**
+     * Will write a single ASCII character to the file.
+     * @param c the character to write
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter write(char c) throws IOException {
+        if(!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+        return this;
+    }
+
+    /**
+     * Will write the decimal digits of value to the file.
+     * @param value the int to write
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter writeInt(int value) throws IOException {
+        if(value == Integer.MIN_VALUE) {
+            return write(String.valueOf(value));
+        }
+        if(buffer.remaining() < digits.length) {
+            flush();
+        }
+        if(value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while(value != 0);
+        buffer.put(digits, start, digits.length - start);
+        return this;
+    }
+
+    /**
+     * Will write value to the file as 4 big endian bytes, unlike writeInt which writes its decimal digits.
+     * @param value the int to write
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter putInt(int value) throws IOException {
+        if(buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+        buffer.putInt(value);
+        return this;
+    }
+
+    /**
+     * Will write value to the file as 8 big endian bytes.
+     * @param value the long to write
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter putLong(long value) throws IOException {
+        if(buffer.remaining() < Long.BYTES) {
+            flush();
+        }
+        buffer.putLong(value);
+        return this;
+    }
+
+    /**
+     * Will write value to the file as 2 big endian bytes.
+     * @param value the short to write
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter putShort(short value) throws IOException {
+        if(buffer.remaining() < Short.BYTES) {
+            flush();
+        }
+        buffer.putShort(value);
+        return this;
+    }
+
+    /**
+     * Will write the remaining bytes of data to the file, data is left at its limit.
+     * @param data the bytes to write from its position to its limit
+     * @return this writer
+     * @throws IOException if the bytes can't be written
+     */
+    public AtomicFileWriter write(ByteBuffer data) throws IOException {
+        flush();
+        while(data.hasRemaining()) {
+            channel.write(data);
+        }
+        return this;
+    }
+
+    /**
+     * Will end the current line.
+     * @return this writer
+     * @throws IOException if the buffer can't be written
+     */
+    public AtomicFileWriter newLine() throws IOException {
+        if(buffer.remaining() < LINE_SEPARATOR.length) {
+            flush();
+        }
+        buffer.put(LINE_SEPARATOR);
+        return this;
+    }
+
+    /**
+     * Will write everything to disk and replace the target file with the temporary file, atomically where the
+     * file system supports it.
+     * @throws IOException if the file can't be written or moved
+     */
+    public void commit() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * Will discard the temporary file if commit wasn't reached, the target file is left untouched.
+     * @throws IOException if the temporary file can't be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if(!committed) {
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the temporary file and empties the buffer.
+     * @throws IOException if the bytes can't be written
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+}
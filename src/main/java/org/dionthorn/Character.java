@@ -1,6 +1,6 @@
 package org.dionthorn;
 
-import javafx.scene.image.Image;
+import javafx.scene.canvas.GraphicsContext;
 
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -10,11 +10,16 @@ import java.util.logging.Level;
  */
 public abstract class Character extends PhysicalEntity implements Drawable, Updateable {
 
+    /**
+     * The side a Character fights on, assigned by GameState when the character joins a team.
+     */
+    public enum Team { NONE, PLAYER, ENEMY }
+
     protected final String PATH;
     protected final String name;
     protected final TileSet spriteSheet;
     protected final CharacterClass charClass;
-    protected Image currentSprite;
+    protected int currentSpriteID;
     protected int tileSize;
     protected int lastAttackRoll = 0;
     protected double maxHP;
@@ -27,6 +32,9 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
     protected boolean isBattleTurn;
     protected boolean isAttacking;
     protected ArrayList<ItemInInventory> items = new ArrayList<>();
+    protected Team team = Team.NONE;
+    // position of this character within its team list, see GameState.addToTeam
+    protected int teamIndex = -1;
 
     /**
      * Default Abstract Character Constructor will generate everything needed for a 'character' in the game
@@ -43,7 +51,7 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
         tileSize = 32;
         spriteSheet = new TileSet(spritePath, 160); // These sprite are larger than 32*32, however we can cut
         // them into 160*160 and then resize the image to 32*32 during the Player or NPC subclasses .draw() calls
-        currentSprite = spriteSheet.getTile(0);
+        currentSpriteID = 0;
         this.name = name;
         this.hp = charClass.getPerLevelHP();
         this.attack = charClass.getPerLevelAttack();
@@ -54,17 +62,15 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
         this.charClass = charClass;
     }
 
+    /**
+     * Will check if this character will collide with an item using game state and the x,y of the location to test.
+     * @param gameState the current game state this character is associated to
+     * @param x the x location to check for an item
+     * @param y the y location to check for an item
+     * @return the item on top of the tile at x,y or null if there are no items there
+     */
     protected ItemOnMap checkItemCollision(GameState gameState, double x, double y) {
-        ItemOnMap toReturn = null;
-        for(Entity e: gameState.getEntities()) {
-            if(e instanceof ItemOnMap) {
-                ItemOnMap target = (ItemOnMap) e;
-                if(target.getX() == x && target.getY() == y) {
-                    toReturn = target;
-                }
-            }
-        }
-        return toReturn;
+        return gameState.getCurrentMap().getGroundItem((int) x, (int) y);
     }
 
     protected void addItem(ItemOnMap item) {
@@ -84,23 +90,10 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
      */
     protected boolean checkFriendlyCollision(GameState gameState, double x, double y) {
         boolean hit = false;
-        if(gameState.getPlayerTeam().contains(this)) {
-            for(Entity e: gameState.getPlayerTeam()) {
-                int targetX = ((PhysicalEntity) e).getX();
-                int targetY = ((PhysicalEntity) e).getY();
-                if (targetX == x && targetY == y) {
-                    hit = true;
-                    break;
-                }
-            }
-        } else if(gameState.getEnemyTeam().contains(this)) {
-            for(Entity e: gameState.getEnemyTeam()) {
-                int targetX = ((PhysicalEntity) e).getX();
-                int targetY = ((PhysicalEntity) e).getY();
-                if (targetX == x && targetY == y) {
-                    hit = true;
-                    break;
-                }
+        for(PhysicalEntity occupant: gameState.getCurrentMap().getOccupants((int) x, (int) y)) {
+            if(occupant instanceof Character && isAllyOf((Character) occupant)) {
+                hit = true;
+                break;
             }
         }
         double tempX = x;
@@ -115,9 +108,9 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
         } else if(tempY >= gameState.getCurrentMap().getMapHeight()) {
             tempY = gameState.getCurrentMap().getMapHeight() - 1;
         }
-        if(gameState.getCurrentMap().getTileType((int) tempX, (int) tempY) == MapTile.TileType.IMPASSABLE) {
+        if(gameState.getCurrentMap().hasTag((int) tempX, (int) tempY, MapTile.TileType.IMPASSABLE)) {
             hit = true;
-        } else if(gameState.getCurrentMap().getTileType((int) tempX, (int) tempY) == MapTile.TileType.FIRE) {
+        } else if(gameState.getCurrentMap().hasTag((int) tempX, (int) tempY, MapTile.TileType.FIRE)) {
             (this).setHp(this.getHp()-((int)((this).getMaxHP()/10)));
         }
         return hit;
@@ -132,37 +125,52 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
      * @return the Character that was collided with, will return null if x,y is not occupied
      */
     protected Character checkEnemyCollision(GameState gameState, double x, double y) {
-        boolean hit = false;
-        int targetUID = -1;
-        if(gameState.getPlayerTeam().contains(this)) {
-            for(Entity e: gameState.getEnemyTeam()) {
-                int targetX = ((PhysicalEntity) e).getX();
-                int targetY = ((PhysicalEntity) e).getY();
-                if(targetX == x && targetY == y) {
-                    hit = true;
-                    targetUID = e.getUID();
-                }
-            }
-        } else if(gameState.getEnemyTeam().contains(this)) {
-            for(Entity e: gameState.getPlayerTeam()) {
-                int targetX = ((PhysicalEntity) e).getX();
-                int targetY = ((PhysicalEntity) e).getY();
-                if(targetX == x && targetY == y) {
-                    hit = true;
-                    targetUID = e.getUID();
-                }
-            }
-        }
-        if(hit) {
-            for(Entity e: gameState.getEntities()) {
-                if(e.getUID() == targetUID) {
-                    return (Character) e;
-                }
+        for(PhysicalEntity occupant: gameState.getCurrentMap().getOccupants((int) x, (int) y)) {
+            if(occupant instanceof Character && isEnemyOf((Character) occupant)) {
+                return (Character) occupant;
             }
         }
         return null;
     }
 
+    /**
+     * Returns true if other is on the same team as this character, characters without a team have no allies.
+     * @param other the character to check
+     * @return true if both characters are on the same team
+     */
+    protected boolean isAllyOf(Character other) { return team != Team.NONE && team == other.team; }
+
+    /**
+     * Returns true if other is on the opposing team of this character, characters without a team have no enemies.
+     * @param other the character to check
+     * @return true if the characters are on opposing teams
+     */
+    protected boolean isEnemyOf(Character other) {
+        return team != Team.NONE && other.team != Team.NONE && team != other.team;
+    }
+
+    /**
+     * Returns the team this character fights on.
+     * @return the team of this character or Team.NONE
+     */
+    protected Team getTeam() { return team; }
+
+    /**
+     * Returns the position of this character within its team list.
+     * @return the team index or -1 if the character has no team
+     */
+    protected int getTeamIndex() { return teamIndex; }
+
+    /**
+     * Assigns the team of this character, only GameState should call this as it keeps the team lists.
+     * @param team the new team of this character
+     * @param teamIndex the position of this character within the team list
+     */
+    protected void setTeam(Team team, int teamIndex) {
+        this.team = team;
+        this.teamIndex = teamIndex;
+    }
+
     /**
      * Performs an attack where this character attacks the provided enemy.
      * @param enemy the character that this character will attack
@@ -203,6 +211,7 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
         maxHP += charClass.getPerLevelHP();
         hp = maxHP;
         charClass.levelUp();
+        RenderUtil.requestOverlayRedraw();
     }
 
     // Getters and Setters
@@ -247,6 +256,9 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
      * @param newHP set the characters hp attribute to the provided double
      */
     protected void setHp(double newHP) {
+        if(hp != newHP) {
+            RenderUtil.requestOverlayRedraw();
+        }
         hp = newHP;
         if(hp <= 0) {
             isAlive = false;
@@ -305,7 +317,12 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
      * Sets the characters move turn flag.
      * @param value boolean for setting the characters move turn flag
      */
-    protected void setMoveTurn(boolean value) { isMoveTurn = value; }
+    protected void setMoveTurn(boolean value) {
+        if(isMoveTurn != value) {
+            RenderUtil.requestOverlayRedraw();
+        }
+        isMoveTurn = value;
+    }
 
     /**
      * Returns the boolean value of the characters battle turn flag.
@@ -320,16 +337,38 @@ public abstract class Character extends PhysicalEntity implements Drawable, Upda
     protected void setBattleTurn(boolean value) { isBattleTurn = value; }
 
     /**
-     * Returns the image of the associated sprite being used.
-     * @return the image of the associated sprite being used
+     * Returns the tile id within the sprite sheet of the associated sprite being used.
+     * @return the tile id of the associated sprite being used
+     */
+    protected int getCurrentSpriteID() { return currentSpriteID; }
+
+    /**
+     * Returns the sprite sheet this characters sprites are drawn from.
+     * @return the sprite sheet of this character
+     */
+    protected TileSet getSpriteSheet() { return spriteSheet; }
+
+    /**
+     * Will draw the current sprite of this character as a square at x,y.
+     * @param gc the graphics context to draw onto
+     * @param x the x location to draw at
+     * @param y the y location to draw at
+     * @param size the width and height to draw the sprite at
      */
-    protected Image getCurrentSprite() { return currentSprite; }
+    protected void drawSprite(GraphicsContext gc, double x, double y, double size) {
+        spriteSheet.drawTile(gc, currentSpriteID, x, y, size, size);
+    }
 
     /**
      * Changes the currentSprite tile for animation.
      * @param tileID the id of the sprite for animation purposes
      */
-    protected void setCurrentSprite(int tileID) { currentSprite = spriteSheet.getTile(tileID); }
+    protected void setCurrentSprite(int tileID) {
+        if(tileID != currentSpriteID) {
+            RenderUtil.requestOverlayRedraw();
+        }
+        currentSpriteID = tileID;
+    }
 
     /**
      * Returns this characters CharacterClass.
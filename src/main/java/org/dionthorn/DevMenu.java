@@ -13,8 +13,6 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
@@ -84,6 +82,8 @@ public class DevMenu extends Stage {
         devMenu.setHgap(10); // assign a 10 pixel gap between nodes
         devMenu.setVgap(10);
         devMainUI.setCenter(devMenu); // this is the primary node so center it
+        // any interaction with the dev menu can change what the game screen or dev menu should show
+        devRootScene.addEventFilter(MouseEvent.MOUSE_RELEASED, event -> RenderUtil.requestOverlayRedraw());
         devMenu.setOnMouseClicked(this::devMenuClicked); // handy activation of devMenuClicked method,
         // event -> devMenuClicked() lambda will also work here
         // create the TileID: text object that shows the currently selected tileID
@@ -117,7 +117,7 @@ public class DevMenu extends Stage {
         GridPane.setConstraints(devMapPath, 0, 2);
         Button saveButton = new Button("Save Map");
         GridPane.setConstraints(saveButton, 1, 2, 2, 1);
-        saveButton.setOnAction(event -> app.getGameState().getCurrentMap().saveData());
+        saveButton.setOnAction(event -> app.getGameState().getCurrentMap().saveDataInBackground());
 
         // Row 3
 
@@ -144,10 +144,9 @@ public class DevMenu extends Stage {
         GridPane.setConstraints(devLevelUp, 1, 4, 2, 1);
         devLevelUp.setOnAction(event -> {
             if(app.getLastSelectChar() != -1) {
-                for(Entity e: app.getGameState().getEntities()) {
-                    if(e.getUID() == app.getLastSelectChar()) {
-                        ((Character) e).levelUp();
-                    }
+                Entity e = app.getGameState().getEntity(app.getLastSelectChar());
+                if(e instanceof Character) {
+                    ((Character) e).levelUp();
                 }
             }
         });
@@ -161,8 +160,7 @@ public class DevMenu extends Stage {
         GridPane.setConstraints(memData, 0, 5);
         memData.setOnAction(event -> {
             if(memInfo != null) {
-                devMenu.getChildren().remove(memInfo.get(0));
-                devMenu.getChildren().remove(memInfo.get(1));
+                devMenu.getChildren().removeAll(memInfo);
             }
             memInfo = new ArrayList<>();
             long totalMem = Runtime.getRuntime().totalMemory() / (1024 * 1024);
@@ -173,10 +171,13 @@ public class DevMenu extends Stage {
             String run = String.format("FRE:%d Mb USE:%d Mb", freeMem, usedMem);
             memInfo.add(new Text(total));
             memInfo.add(new Text(run));
+            memInfo.add(new Text(String.format("SKIPPED FRAMES:%d", RenderUtil.getSkippedFrames())));
             GridPane.setConstraints(memInfo.get(0), 1, 5, 4, 1);
             devMenu.getChildren().add(memInfo.get(0));
             GridPane.setConstraints(memInfo.get(1), 5, 5, 4, 1);
             devMenu.getChildren().add(memInfo.get(1));
+            GridPane.setConstraints(memInfo.get(2), 9, 5, 4, 1);
+            devMenu.getChildren().add(memInfo.get(2));
         });
 
         // Row 6-7
@@ -332,19 +333,8 @@ public class DevMenu extends Stage {
                 tileY = tileY * maxX;
             }
             int tileIDToChange = tileX + tileY;
-            WritableImage toCheck = new WritableImage(app.getGameState().getCurrentMap().getTileSize(),
-                    app.getGameState().getCurrentMap().getTileSize()
-            );
-            PixelReader pr = tileSetView.getImage().getPixelReader();
-            int yOffset = (tileY / maxX) * app.getGameState().getCurrentMap().getTileSize();
-            int xOffset = tileX * app.getGameState().getCurrentMap().getTileSize();
-            for(int yR=0; yR<app.getGameState().getCurrentMap().getTileSize(); yR++) {
-                for(int xR=0; xR<app.getGameState().getCurrentMap().getTileSize(); xR++) {
-                    toCheck.getPixelWriter().setColor(xR, yR, pr.getColor(xR+xOffset, yR+yOffset));
-                }
-            }
-            if(TileSet.areImagesSame(
-                    app.getGameState().getCurrentMap().getTileSet(SELECTED_TILE_SET_ID).getBlank(), toCheck)
+            if(app.getGameState().getCurrentMap().getTileSet(SELECTED_TILE_SET_ID).isSourceTileBlank(
+                    tileIDToChange)
             ) {
                 SELECTED_TILE_ID = app.getGameState().getCurrentMap().getTileSet(
                         SELECTED_TILE_SET_ID).getTotalTiles() - 1;
@@ -394,6 +384,7 @@ public class DevMenu extends Stage {
             app.getGameState().getCurrentMap().getTileSet(SELECTED_TILE_SET_ID).setMetaFireID(SELECTED_TILE_ID, false);
             isFire.setSelected(true);
         }
+        app.getGameState().getCurrentMap().refreshTileTypes();
         tileMetaCheck();
     }
 
@@ -403,6 +394,7 @@ public class DevMenu extends Stage {
      */
     public void setImpassable() {
         app.getGameState().getCurrentMap().getTileSet(SELECTED_TILE_SET_ID).setMetaImpassableID(SELECTED_TILE_ID, !isImpassable.isSelected());
+        app.getGameState().getCurrentMap().refreshTileTypes();
         tileMetaCheck();
     }
 
@@ -0,0 +1,98 @@
+package org.dionthorn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The EntityPartition holds the entities of a single Map split by what they can do, so the update and draw loops
+ * only walk the entities that are relevant to them without instanceof checks or map comparisons.
+ * Every list keeps the order the entities were added in. GameState keeps one partition per Map, see
+ * GameState.getPartition.
+ */
+public class EntityPartition {
+
+    private final ArrayList<Entity> entities = new ArrayList<>();
+    private final ArrayList<Updateable> updateables = new ArrayList<>();
+    private final ArrayList<Drawable> drawables = new ArrayList<>();
+    // characters that were alive when last checked, dead ones are dropped on the next getLivingCharacters call
+    private final ArrayList<Character> living = new ArrayList<>();
+    private final List<Entity> entitiesView = Collections.unmodifiableList(entities);
+    private final List<Updateable> updateablesView = Collections.unmodifiableList(updateables);
+    private final List<Drawable> drawablesView = Collections.unmodifiableList(drawables);
+    private final List<Character> livingView = Collections.unmodifiableList(living);
+
+    /**
+     * Will add the entity to every list it belongs in.
+     * @param e the entity to add
+     */
+    public void add(Entity e) {
+        entities.add(e);
+        if(e instanceof Updateable) {
+            updateables.add((Updateable) e);
+        }
+        if(e instanceof Drawable) {
+            drawables.add((Drawable) e);
+        }
+        if(e instanceof Character && ((Character) e).isAlive()) {
+            living.add((Character) e);
+        }
+    }
+
+    /**
+     * Will remove the entity from every list it is in.
+     * @param e the entity to remove
+     */
+    public void remove(Entity e) {
+        if(entities.remove(e)) {
+            if(e instanceof Updateable) {
+                updateables.remove(e);
+            }
+            if(e instanceof Drawable) {
+                drawables.remove(e);
+            }
+            if(e instanceof Character) {
+                living.remove(e);
+            }
+        }
+    }
+
+    /**
+     * Will remove every entity from this partition.
+     */
+    public void clear() {
+        entities.clear();
+        updateables.clear();
+        drawables.clear();
+        living.clear();
+    }
+
+    /**
+     * Returns every entity of this partition.
+     * @return an unmodifiable view of the entities
+     */
+    public List<Entity> getEntities() { return entitiesView; }
+
+    /**
+     * Returns the entities of this partition that are updated every frame.
+     * @return an unmodifiable view of the updateable entities
+     */
+    public List<Updateable> getUpdateables() { return updateablesView; }
+
+    /**
+     * Returns the entities of this partition that are drawn every frame.
+     * @return an unmodifiable view of the drawable entities
+     */
+    public List<Drawable> getDrawables() { return drawablesView; }
+
+    /**
+     * Returns the characters of this partition that are still alive. A character never comes back to life so the
+     * dead are dropped from the list here once instead of being checked again every frame.
+     * @return an unmodifiable view of the living characters
+     */
+    public List<Character> getLivingCharacters() {
+        living.removeIf(character -> !character.isAlive());
+        return livingView;
+    }
+
+}
@@ -1,11 +1,15 @@
 package org.dionthorn;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.logging.Level;
 
@@ -105,26 +109,47 @@ public class FileOpUtils {
         return toReturn;
     }
 
+    /**
+     * Will read only the first line of a target file, used to read headers without loading the whole file.
+     * @param targetFile the target file
+     * @return the first line of the file or null if it is empty or can't be read
+     */
+    public static String getFirstFileLine(URI targetFile) {
+        String toReturn = null;
+        try(BufferedReader reader = Files.newBufferedReader(Path.of(targetFile))) {
+            toReturn = reader.readLine();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return toReturn;
+    }
+
+    /**
+     * Will open the target file to be read a line at a time, used for files too large to read whole.
+     * @param targetFile the target file
+     * @return a reader of the file that must be closed by the caller
+     * @throws IOException if the file can't be opened
+     */
+    public static BufferedReader getFileReader(URI targetFile) throws IOException {
+        return Files.newBufferedReader(Path.of(targetFile));
+    }
+
     /**
      * Will either create a new file at path, or overwrite an existing one. will take each string in data and
      * write a new line per string into the file at path.
+     * The lines are written to a temporary file that replaces the target in one step, see AtomicFileWriter.
      * @param targetFile the target file
      * @param data the data where each index in data will be a new line in the file
      */
     public static void writeFileLines(URI targetFile, String[] data) {
         if(!doesFileExist(targetFile)) {
             Run.programLogger.log(Level.INFO, String.format("File: %s Doesn't Exist Creating New File!", targetFile.getPath()));
-            createFile(targetFile);
         }
-        File fileToWrite = new File(targetFile.getPath());
-        try {
-            ByteArrayOutputStream convertToBytes = new ByteArrayOutputStream();
-            FileOutputStream fileWriter = new FileOutputStream(fileToWrite);
+        try(AtomicFileWriter writer = new AtomicFileWriter(targetFile)) {
             for(String s: data) {
-                s += System.lineSeparator();
-                convertToBytes.write(s.getBytes());
+                writer.write(s).newLine();
             }
-            fileWriter.write(convertToBytes.toByteArray());
+            writer.commit();
             Run.programLogger.log(Level.INFO, String.format("File: %s Successfully Wrote Data", targetFile.getPath()));
         } catch (Exception e) {
             e.printStackTrace();
@@ -148,4 +173,248 @@ public class FileOpUtils {
         }
     }
 
+    /**
+     * Will read the entire target file into a heap ByteBuffer with a single sequential read.
+     * The file is not memory mapped so nothing keeps it open once this returns and it can be replaced right away.
+     * @param targetFile the target file
+     * @return a buffer holding the contents of the file or null if it couldn't be read
+     */
+    public static ByteBuffer readFileBuffer(URI targetFile) {
+        ByteBuffer toReturn = null;
+        try {
+            toReturn = ByteBuffer.wrap(Files.readAllBytes(Path.of(targetFile)));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return toReturn;
+    }
+
+    /**
+     * Will read up to length bytes of the target file starting at byte position into a heap ByteBuffer.
+     * Used to read the header of a file without reading the rest of it.
+     * @param targetFile the target file
+     * @param position the byte offset within the file to start reading at
+     * @param length the maximum amount of bytes to read
+     * @return a buffer holding the bytes read, shorter than length if the file ended first, or null on failure
+     */
+    public static ByteBuffer readFileRegion(URI targetFile, long position, int length) {
+        ByteBuffer toReturn = null;
+        try(SeekableByteChannel channel = Files.newByteChannel(Path.of(targetFile), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            channel.position(position);
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while(read != -1 && buffer.hasRemaining());
+            toReturn = buffer.flip();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return toReturn;
+    }
+
+    /**
+     * Will fill several regions of the target file into buffers with one open file, each buffer is filled from its
+     * position to its limit starting at the matching byte offset of positions. The inverse of writeFileRegions.
+     * @param targetFile the target file
+     * @param positions the byte offset within the file to read each buffer from
+     * @param data the buffers to fill, each is flipped ready to be read once filled
+     * @return true if every buffer was filled, false if the file ended first or couldn't be read
+     */
+    public static boolean readFileRegions(URI targetFile, long[] positions, ByteBuffer[] data) {
+        try(FileChannel channel = FileChannel.open(Path.of(targetFile), StandardOpenOption.READ)) {
+            for(int step = 0; step < data.length; step++) {
+                long position = positions[step];
+                while(data[step].hasRemaining()) {
+                    int read = channel.read(data[step], position);
+                    if(read == -1) {
+                        return false;
+                    }
+                    position += read;
+                }
+                data[step].flip();
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Will either create a new file at path, or overwrite an existing one with the remaining bytes of data.
+     * The bytes are written to a temporary file that replaces the target in one step, see AtomicFileWriter.
+     * @param targetFile the target file
+     * @param data the buffer of bytes to write from its position to its limit
+     */
+    public static void writeFileBuffer(URI targetFile, ByteBuffer data) {
+        try(AtomicFileWriter writer = new AtomicFileWriter(targetFile)) {
+            writer.write(data);
+            writer.commit();
+            Run.programLogger.log(Level.INFO, String.format("File: %s Successfully Wrote Data", targetFile.getPath()));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Will overwrite regions of an existing file in place, each buffer is written from its position to its limit
+     * starting at the matching byte offset of positions. Only the regions are written, never the rest of the file.
+     * The regions are first written to journalFile, which is replaced in one step, and the journal is deleted once
+     * the regions reached the disk, so a write cut short is finished by replayFileJournal.
+     * The journal holds an int count of regions followed by each region as a long position, an int length and
+     * its bytes.
+     * @param targetFile the target file
+     * @param journalFile the journal of the target file
+     * @param positions the byte offset within the file to write each buffer at
+     * @param data the buffers of bytes to write
+     * @return true if every region was written
+     */
+    public static boolean writeFileRegions(URI targetFile, URI journalFile, long[] positions, ByteBuffer[] data) {
+        try {
+            try(AtomicFileWriter writer = new AtomicFileWriter(journalFile)) {
+                writer.putInt(data.length);
+                for(int step = 0; step < data.length; step++) {
+                    writer.putLong(positions[step]).putInt(data[step].remaining()).write(data[step].duplicate());
+                }
+                writer.commit();
+            }
+            writeRegions(targetFile, positions, data);
+            Files.delete(Path.of(journalFile));
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Will finish a writeFileRegions call that was cut short by writing the regions of journalFile into the target
+     * file again, then delete the journal. Does nothing if there is no journal.
+     * @param targetFile the target file
+     * @param journalFile the journal of the target file
+     * @return true if there was no journal or it was written, false if it couldn't be read or written
+     */
+    public static boolean replayFileJournal(URI targetFile, URI journalFile) {
+        if(!journalFile.getScheme().equals("file") || !doesFileExist(journalFile)) {
+            return true;
+        }
+        try {
+            ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(Path.of(journalFile)));
+            int count = journal.getInt();
+            if(count < 0 || count > journal.remaining() / (Long.BYTES + Integer.BYTES)) {
+                throw new BufferUnderflowException();
+            }
+            long[] positions = new long[count];
+            ByteBuffer[] data = new ByteBuffer[count];
+            for(int step = 0; step < count; step++) {
+                positions[step] = journal.getLong();
+                int length = journal.getInt();
+                if(length < 0 || length > journal.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                data[step] = journal.slice().limit(length);
+                journal.position(journal.position() + length);
+            }
+            writeRegions(targetFile, positions, data);
+            Files.delete(Path.of(journalFile));
+            Run.programLogger.log(Level.INFO, String.format("File: %s Replayed %d regions from its journal",
+                    targetFile.getPath(), count)
+            );
+            return true;
+        } catch (BufferUnderflowException e) {
+            // a journal is only ever renamed into place whole, so a broken one was never started on
+            Run.programLogger.log(Level.WARNING, "Journal is corrupt, discarding it: " + journalFile.getPath());
+            try {
+                Files.deleteIfExists(Path.of(journalFile));
+            } catch (IOException deleteFailed) {
+                deleteFailed.printStackTrace();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Writes each buffer into the target file at the matching byte offset of positions and forces them to disk.
+     * @param targetFile the target file
+     * @param positions the byte offset within the file to write each buffer at
+     * @param data the buffers of bytes to write
+     * @throws IOException if the file can't be written
+     */
+    private static void writeRegions(URI targetFile, long[] positions, ByteBuffer[] data) throws IOException {
+        try(FileChannel channel = FileChannel.open(Path.of(targetFile), StandardOpenOption.WRITE)) {
+            for(int step = 0; step < data.length; step++) {
+                long position = positions[step];
+                while(data[step].hasRemaining()) {
+                    position += channel.write(data[step], position);
+                }
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Will move the source file to the target file, replacing any file already there.
+     * @param sourceFile the file to move
+     * @param targetFile where to move the file to
+     * @return true if the file was moved
+     */
+    public static boolean moveFile(URI sourceFile, URI targetFile) {
+        try {
+            Files.move(Path.of(sourceFile), Path.of(targetFile), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Will set the last modified time of the target file to now.
+     * @param targetFile the target file
+     */
+    public static void touchFile(URI targetFile) {
+        try {
+            Files.setLastModifiedTime(Path.of(targetFile), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the size of the target file in bytes.
+     * @param targetFile the target file
+     * @return the size of the file or -1 if it doesn't exist or can't be read
+     */
+    public static long getFileSize(URI targetFile) {
+        try {
+            Path path = Path.of(targetFile);
+            if(Files.exists(path)) {
+                return Files.size(path);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the last modified time of the target file in milliseconds since the epoch.
+     * @param targetFile the target file
+     * @return the last modified time of the file or -1 if it doesn't exist or can't be read
+     */
+    public static long getLastModified(URI targetFile) {
+        try {
+            Path path = Path.of(targetFile);
+            if(Files.exists(path)) {
+                return Files.getLastModifiedTime(path).toMillis();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
 }
@@ -2,6 +2,10 @@ package org.dionthorn;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -15,15 +19,23 @@ public class GameState {
         MAIN_MENU, BATTLE,
         EXIT_TO_MAIN,
         GAME, GAME_OVER, GAME_WIN,
-        LEVEL_SELECTION,
+        LEVEL_SELECTION, LOADING,
         CHARACTER_STATUS, CHARACTER_CREATION,
         SETTINGS
     }
 
     private final ArrayList<Map> maps;
     private final ArrayList<Entity> entities;
+    private final List<Entity> entitiesView;
+    // entities indexed by UID, Entity hands UIDs out sequentially so the array stays dense, see getEntity
+    private Entity[] entitiesByUID = new Entity[64];
+    // entities split by the Map they are on and by what they can do, see getPartition
+    private final HashMap<Map, EntityPartition> partitions = new HashMap<>();
     private final ArrayList<Entity> playerTeam;
     private final ArrayList<Entity> enemyTeam;
+    private final List<Entity> playerTeamView;
+    private final List<Entity> enemyTeamView;
+    private Player player;
 
     private STATE currentState;
     private STATE previousState;
@@ -37,13 +49,17 @@ public class GameState {
      * @param initialMap the default map to load for seamless initial game flow
      */
     public GameState(Map initialMap) {
+        initialMap.ensureLoaded();
         maps = new ArrayList<>();
         maps.add(initialMap);
         currentMap = initialMap;
         currentState = STATE.MAIN_MENU;
         entities = new ArrayList<>();
+        entitiesView = Collections.unmodifiableList(entities);
         playerTeam = new ArrayList<>();
         enemyTeam = new ArrayList<>();
+        playerTeamView = Collections.unmodifiableList(playerTeam);
+        enemyTeamView = Collections.unmodifiableList(enemyTeam);
         attacker = null;
         defender = null;
     }
@@ -72,29 +88,59 @@ public class GameState {
      * Will set the nextTurn boolean flag.
      * @param value the value to assign to next turn flag
      */
-    public void setNextTurn(boolean value) { nextTurn = value; }
+    public void setNextTurn(boolean value) {
+        if(nextTurn != value) {
+            RenderUtil.requestOverlayRedraw();
+        }
+        nextTurn = value;
+    }
 
     /**
-     * Returns the playerTeam entity ArrayList.
-     * @return the player team entity array list
+     * Returns the playerTeam entity list, characters join a team with addToTeam.
+     * @return an unmodifiable view of the player team entity list
      */
-    public ArrayList<Entity> getPlayerTeam() { return playerTeam; }
+    public List<Entity> getPlayerTeam() { return playerTeamView; }
 
     /**
-     * Returns the enemyTeam entity ArrayList.
-     * @return the enemy team entity array list
+     * Returns the enemyTeam entity list, characters join a team with addToTeam.
+     * @return an unmodifiable view of the enemy team entity list
      */
-    public ArrayList<Entity> getEnemyTeam() { return enemyTeam; }
+    public List<Entity> getEnemyTeam() { return enemyTeamView; }
+
+    /**
+     * Will add the character to the end of the team list and record the team and its position on the character,
+     * so team checks are a field read instead of a list search, see Character.getTeam.
+     * @param character the character joining the team
+     * @param team the team to join, PLAYER or ENEMY
+     */
+    public void addToTeam(Character character, Character.Team team) {
+        ArrayList<Entity> members = team == Character.Team.PLAYER ? playerTeam : enemyTeam;
+        character.setTeam(team, members.size());
+        members.add(character);
+    }
+
+    /**
+     * Will empty both team lists and clear the team of every former member.
+     */
+    private void clearTeams() {
+        for(Entity e: playerTeam) {
+            ((Character) e).setTeam(Character.Team.NONE, -1);
+        }
+        for(Entity e: enemyTeam) {
+            ((Character) e).setTeam(Character.Team.NONE, -1);
+        }
+        playerTeam.clear();
+        enemyTeam.clear();
+    }
 
     /**
      * will assign the entity with UID to take their move turn.
      * @param UID the integer id of the entity to advance to their move turn
      */
     public void nextTurn(int UID) {
-        for(Entity e: entities) {
-            if(e.getUID() == UID) {
-                ((Character) e).setMoveTurn(true);
-            }
+        Entity e = getEntity(UID);
+        if(e != null) {
+            ((Character) e).setMoveTurn(true);
         }
     }
 
@@ -105,10 +151,74 @@ public class GameState {
     public ArrayList<Map> getMaps() { return maps; }
 
     /**
-     * getter for the current Entity ArrayList.
-     * @return the game state entities array list
+     * getter for the current Entity list, entities are added and removed with addEntity and removeEntity.
+     * @return an unmodifiable view of the game state entities list
+     */
+    public List<Entity> getEntities() { return entitiesView; }
+
+    /**
+     * Returns the entity with the provided UID.
+     * @param UID the integer id of the entity
+     * @return the entity or null if no current entity has that UID
+     */
+    public Entity getEntity(int UID) {
+        if(UID < 0 || UID >= entitiesByUID.length) {
+            return null;
+        }
+        return entitiesByUID[UID];
+    }
+
+    /**
+     * Returns the entities on the provided Map split by what they can do, an empty partition if there are none.
+     * @param map the map of the entities
+     * @return the entity partition of the map
+     */
+    public EntityPartition getPartition(Map map) {
+        return partitions.computeIfAbsent(map, key -> new EntityPartition());
+    }
+
+    /**
+     * Returns the Map an entity belongs to, items on the ground belong to the current map.
+     * @param e the entity to check
+     * @return the map of the entity
+     */
+    private Map getMapOf(Entity e) {
+        if(e instanceof PhysicalEntity) {
+            return ((PhysicalEntity) e).getCurrentMap();
+        }
+        return currentMap;
+    }
+
+    /**
+     * Will add an entity to the entities list, index it by its UID and add it to the partition of its Map.
+     * @param e the entity to add
      */
-    public ArrayList<Entity> getEntities() { return entities; }
+    public void addEntity(Entity e) {
+        entities.add(e);
+        getPartition(getMapOf(e)).add(e);
+        if(e instanceof Player) {
+            player = (Player) e;
+        }
+        int UID = e.getUID();
+        if(UID >= entitiesByUID.length) {
+            entitiesByUID = Arrays.copyOf(entitiesByUID, Math.max(UID + 1, entitiesByUID.length * 2));
+        }
+        entitiesByUID[UID] = e;
+    }
+
+    /**
+     * Will remove an entity from the entities list, the UID index and the partition of its Map.
+     * @param e the entity to remove
+     */
+    public void removeEntity(Entity e) {
+        if(entities.remove(e)) {
+            getPartition(getMapOf(e)).remove(e);
+            entitiesByUID[e.getUID()] = null;
+            if(e == player) {
+                player = null;
+            }
+        }
+    }
 
     /**
      * getter for the GameState Current Map.
@@ -122,6 +232,7 @@ public class GameState {
      */
     public void setCurrentMap(Map newMap) {
         currentMap = newMap;
+        RenderUtil.requestRedraw();
         // Check if map is a randomly generated one, this means it's in memory with no associated .meta file
         // so we must write a .meta and .dat file to disk via the maps .saveData() function.
         // only perform this if the map doesn't already exist on disk
@@ -129,75 +240,70 @@ public class GameState {
             newMap.saveData();
         }
         // Otherwise we clear the current gameState for related map handling but we preserve the current Player object
-        playerTeam.clear();
-        enemyTeam.clear();
-        Entity tempPlayer = getPlayerEntity();
+        clearTeams();
+        Player tempPlayer = getPlayerEntity();
+        for(Entity e: entities) {
+            entitiesByUID[e.getUID()] = null;
+        }
         entities.clear();
-        entities.add(tempPlayer);
-        playerTeam.add(getPlayerEntity());
-        // Make sure we have correct .dat and .meta data for this new map,
-        // this performs the same initial setup as the Default Constructor
-        newMap.loadMapData();
-        // Now we need to use the maps meta data to setup teams
-        String[] startLoc = getCurrentMap().getMetaStartLoc().split(":")[0].split(",");
-        getPlayerEntity().setCurrentMap(getCurrentMap(), Integer.parseInt(startLoc[0]), Integer.parseInt(startLoc[1]));
-        // now setup allies and enemies
-        String[] allies = getCurrentMap().getMetaAllies().split(":")[0].split("/");
-        String[] enemies = getCurrentMap().getMetaEnemies().split(":")[0].split("/");
-        String[] items = getCurrentMap().getMetaItems().split(":")[0].split("/");
-        CharacterClass tempClass = null;
-        for(String ally: allies) {
-            if(!ally.equals("")) {
-                String[] temp = ally.split(",");
-                String name = temp[0];
-                int x = Integer.parseInt(temp[1]);
-                int y = Integer.parseInt(temp[2]);
-                if(temp[3].equals("magic")) {
-                    tempClass = new MagicClass();
-                } else if(temp[3].equals("martial")) {
-                    tempClass = new MartialClass();
-                }
-                assert tempClass != null;
-                NonPlayerCharacter tempChar = new NonPlayerCharacter(getCurrentMap(),
-                        tempClass.getDefaultSpriteAlly(), name, x, y, tempClass
-                );
-                getEntities().add(tempChar);
-                getPlayerTeam().add(tempChar);
-            }
+        partitions.clear();
+        // Return the map to its loaded state, this is restored from memory and only rereads the .dat and .meta
+        // files if they changed on disk since the map was loaded or saved
+        newMap.resetMapData();
+        // The player is moved before being added back so it lands in the partition of the new map
+        tempPlayer.setCurrentMap(newMap, newMap.getStartX(), newMap.getStartY());
+        addEntity(tempPlayer);
+        addToTeam(tempPlayer, Character.Team.PLAYER);
+        // Now we need to use the maps spawn records to setup teams
+        spawnMapEntities();
+        playerTeam.trimToSize();
+        enemyTeam.trimToSize();
+        entities.trimToSize();
+    }
+
+    /**
+     * Will create the allies, enemies and items of the current Map from its spawn records and add them to the
+     * entities list and their team. Used by both Run.newGame and setCurrentMap.
+     */
+    public void spawnMapEntities() {
+        SpawnRecord[] allies = currentMap.getAllySpawns();
+        SpawnRecord[] enemies = currentMap.getEnemySpawns();
+        SpawnRecord[] items = currentMap.getItemSpawns();
+        entities.ensureCapacity(entities.size() + allies.length + enemies.length + items.length);
+        playerTeam.ensureCapacity(playerTeam.size() + allies.length);
+        enemyTeam.ensureCapacity(enemyTeam.size() + enemies.length);
+        for(SpawnRecord ally: allies) {
+            CharacterClass charClass = ally.makeCharacterClass();
+            NonPlayerCharacter tempChar = new NonPlayerCharacter(currentMap, charClass.getDefaultSpriteAlly(),
+                    ally.getName(), ally.getX(), ally.getY(), charClass
+            );
+            addEntity(tempChar);
+            addToTeam(tempChar, Character.Team.PLAYER);
         }
-        for(String enemy: enemies) {
-            if(!enemy.equals("")) {
-                String[] temp = enemy.split(",");
-                String name = temp[0];
-                int x = Integer.parseInt(temp[1]);
-                int y = Integer.parseInt(temp[2]);
-                if(temp[3].equals("magic")) {
-                    tempClass = new MagicClass();
-                } else if(temp[3].equals("martial")) {
-                    tempClass = new MartialClass();
-                }
-                assert tempClass != null;
-                NonPlayerCharacter tempChar = new NonPlayerCharacter(getCurrentMap(),
-                        tempClass.getDefaultSpriteEnemy(), name, x, y, tempClass
-                );
-                getEntities().add(tempChar);
-                getEnemyTeam().add(tempChar);
-            }
+        for(SpawnRecord enemy: enemies) {
+            CharacterClass charClass = enemy.makeCharacterClass();
+            NonPlayerCharacter tempChar = new NonPlayerCharacter(currentMap, charClass.getDefaultSpriteEnemy(),
+                    enemy.getName(), enemy.getX(), enemy.getY(), charClass
+            );
+            addEntity(tempChar);
+            addToTeam(tempChar, Character.Team.ENEMY);
         }
-        // setup items
-        for(String line: items) {
-            System.out.println(line);
-            // Gold,10,10/:ITEMS
-            if(!line.equals("") && !line.contains("//")) {
-                String[] values = line.split(",");
-                System.out.println("ADDING ITEM: " + values[1]);
-                getEntities().add(ItemOnMap.makeItemOnMap(values[0], values[1],
-                        Integer.parseInt(values[2]), Integer.parseInt(values[3])));
+        for(SpawnRecord item: items) {
+            ItemOnMap tempItem = ItemOnMap.makeItemOnMap(item.getItemSet(), item.getName(), item.getX(), item.getY());
+            if(tempItem != null) {
+                addEntity(tempItem);
+                currentMap.addGroundItem(tempItem);
             }
         }
-        playerTeam.trimToSize();
-        enemyTeam.trimToSize();
-        entities.trimToSize();
+    }
+
+    /**
+     * Will remove an item that was picked up from the current Map and the entities list.
+     * @param item the item to remove
+     */
+    public void removeItemOnMap(ItemOnMap item) {
+        currentMap.removeGroundItem(item);
+        removeEntity(item);
     }
 
     /**
@@ -215,20 +321,15 @@ public class GameState {
     public void setState(STATE newState) {
         previousState = currentState;
         currentState = newState;
+        RenderUtil.requestRedraw();
     }
 
     /**
      * Returns the current Player Character Object. Player object should always exist from Run.newGame()
+     * The player is remembered when it is added with addEntity.
      * @return the current player character
      */
-    public Player getPlayerEntity() {
-        for(Entity e: entities) {
-            if(e instanceof Player) {
-                return (Player) e;
-            }
-        }
-        return null;
-    }
+    public Player getPlayerEntity() { return player; }
 
     /**
      * Returns the current attacker Character object.
@@ -1,19 +1,20 @@
 package org.dionthorn;
 
-import javafx.scene.image.Image;
-
 public abstract class Item extends Entity {
 
     protected String name;
     protected int value;
     protected double weight;
-    private final Image sprite; // Even in inventory should have a sprite in case we render in an inventory screen.
+    // Even in inventory should have a sprite in case we render in an inventory screen.
+    private final TileSet spriteSheet;
+    private final int spriteID;
 
-    public Item(String name, int value, double weight, Image sprite) {
+    public Item(String name, int value, double weight, TileSet spriteSheet, int spriteID) {
         this.name = name;
         this.value = value;
         this.weight = weight;
-        this.sprite = sprite;
+        this.spriteSheet = spriteSheet;
+        this.spriteID = spriteID;
     }
 
     public int getValue() {
@@ -24,8 +25,12 @@ public abstract class Item extends Entity {
         return weight;
     }
 
-    public Image getSprite() {
-        return sprite;
+    public TileSet getSpriteSheet() {
+        return spriteSheet;
+    }
+
+    public int getSpriteID() {
+        return spriteID;
     }
 
     public String getName() {
@@ -1,11 +1,9 @@
 package org.dionthorn;
 
-import javafx.scene.image.Image;
-
 public class ItemInInventory extends Item {
 
-    public ItemInInventory(String name, int value, double weight, Image sprite) {
-        super(name, value, weight, sprite);
+    public ItemInInventory(String name, int value, double weight, TileSet spriteSheet, int spriteID) {
+        super(name, value, weight, spriteSheet, spriteID);
     }
 
 }
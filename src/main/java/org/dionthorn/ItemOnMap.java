@@ -1,41 +1,22 @@
 package org.dionthorn;
 
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import java.net.URI;
 
 public class ItemOnMap extends Item implements Drawable {
 
     private final int x;
     private final int y;
 
-    public ItemOnMap(String name, int value, double weight, int x, int y, Image sprite) {
-        super(name, value, weight, sprite);
+    public ItemOnMap(String name, int value, double weight, int x, int y, TileSet spriteSheet, int spriteID) {
+        super(name, value, weight, spriteSheet, spriteID);
         this.x = x;
         this.y = y;
     }
 
     public static ItemOnMap makeItemOnMap(String path, String name, int x, int y) {
         // path is the name of the .dat file for item definitions. 0_baseItems.dat should be default
-        int value = 0;
-        double weight = 0;
-        String spritePath = "";
-        int tileId = 0;
-        // uses just the path to the item set and the unique item name within the set, then loads off memory
-        URI pathTo = URI.create((Run.JRT ? Run.GAME_ITEM_PATH + "/" : Run.GAME_ITEM_PATH) + path + ".dat");
-        String[] itemsDefs = FileOpUtils.getFileLines(pathTo);
-        for(String itemDef: itemsDefs) {
-            String[] info = itemDef.split(",");
-            if(info[0].equals(name)) {
-                value = Integer.parseInt(info[1]);
-                weight = Double.parseDouble(info[2]);
-                spritePath = info[3].split(":")[0];
-                tileId = Integer.parseInt(info[3].split(":")[1]);
-                break;
-            }
-        }
-        Image sprite = new TileSet("Items/" + spritePath, Run.TILE_SIZE).getTile(tileId);
-        return new ItemOnMap(name, value, weight, x, y, sprite);
+        // the definitions and sprite sheets are loaded once by the ItemRegistry and reused for every item
+        return ItemRegistry.makeItemOnMap(path, name, x, y);
     }
 
     public int getX() { return x; }
@@ -49,13 +30,15 @@ public class ItemOnMap extends Item implements Drawable {
     @Override
     public void draw(GraphicsContext gc) {
         // need to setup methods for relativeX/Y
-        gc.drawImage(getSprite(), getRelativeX() * Run.TILE_SIZE, getRelativeY() * Run.TILE_SIZE, Run.TILE_SIZE, Run.TILE_SIZE);
+        getSpriteSheet().drawTile(gc, getSpriteID(), getRelativeX() * Run.TILE_SIZE, getRelativeY() * Run.TILE_SIZE,
+                Run.TILE_SIZE, Run.TILE_SIZE
+        );
     }
 
     // Need a toInventory method to turn this on map item into an InInventory item.
     public ItemInInventory toInInventory() {
         // simply strips the x,y attributes as an inventory item doesn't need such information
-        return new ItemInInventory(getName(), getValue(), getWeight(), getSprite());
+        return new ItemInInventory(getName(), getValue(), getWeight(), getSpriteSheet(), getSpriteID());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package org.dionthorn;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.logging.Level;
+
+/**
+ * The ItemRegistry loads each item definition .dat file from GameData/Items once and keeps its definitions keyed
+ * by item name, every sprite sheet is resolved once and shared by all items drawn from it.
+ * Item definition lines are of the form {name},{value},{weight},{tileSetPath}:{tileID}, lines starting with //
+ * are comments. ItemOnMap and ItemInInventory instances are then made from the registry without touching disk.
+ */
+public class ItemRegistry {
+
+    /**
+     * A single parsed item definition of an item set.
+     */
+    public static class ItemDefinition {
+        private final String name;
+        private final int value;
+        private final double weight;
+        private final TileSet spriteSheet;
+        private final int spriteID;
+
+        private ItemDefinition(String name, int value, double weight, TileSet spriteSheet, int spriteID) {
+            this.name = name;
+            this.value = value;
+            this.weight = weight;
+            this.spriteSheet = spriteSheet;
+            this.spriteID = spriteID;
+        }
+
+        /**
+         * Returns a new ItemOnMap of this definition placed at x,y.
+         * @param x the x location of the item
+         * @param y the y location of the item
+         * @return the new item
+         */
+        public ItemOnMap makeItemOnMap(int x, int y) {
+            return new ItemOnMap(name, value, weight, x, y, spriteSheet, spriteID);
+        }
+
+        /**
+         * Returns a new ItemInInventory of this definition.
+         * @return the new item
+         */
+        public ItemInInventory makeItemInInventory() {
+            return new ItemInInventory(name, value, weight, spriteSheet, spriteID);
+        }
+
+        public String getName() { return name; }
+
+        public int getValue() { return value; }
+
+        public double getWeight() { return weight; }
+
+        public TileSet getSpriteSheet() { return spriteSheet; }
+
+        public int getSpriteID() { return spriteID; }
+    }
+
+    // item set name to the definitions of that set keyed by item name
+    private static final HashMap<String, HashMap<String, ItemDefinition>> itemSets = new HashMap<>();
+    // sprite sheet path to the shared TileSet of that sheet
+    private static final HashMap<String, TileSet> spriteSheets = new HashMap<>();
+
+    /**
+     * Returns the definition of the item name within the item set, loading the item set on first use.
+     * @param itemSet the name of the item definition .dat file such as 0_baseItems
+     * @param name the unique name of the item within the set
+     * @return the item definition or null if the set or item doesn't exist
+     */
+    public static synchronized ItemDefinition getDefinition(String itemSet, String name) {
+        HashMap<String, ItemDefinition> definitions = itemSets.get(itemSet);
+        if(definitions == null) {
+            definitions = loadItemSet(itemSet);
+            itemSets.put(itemSet, definitions);
+        }
+        ItemDefinition definition = definitions.get(name);
+        if(definition == null) {
+            Run.programLogger.log(Level.WARNING, String.format("No item %s in item set %s", name, itemSet));
+        }
+        return definition;
+    }
+
+    /**
+     * Returns a new ItemOnMap of the item name within the item set placed at x,y.
+     * @param itemSet the name of the item definition .dat file
+     * @param name the unique name of the item within the set
+     * @param x the x location of the item
+     * @param y the y location of the item
+     * @return the new item or null if the set or item doesn't exist
+     */
+    public static ItemOnMap makeItemOnMap(String itemSet, String name, int x, int y) {
+        ItemDefinition definition = getDefinition(itemSet, name);
+        return definition == null ? null : definition.makeItemOnMap(x, y);
+    }
+
+    /**
+     * Returns a new ItemInInventory of the item name within the item set.
+     * @param itemSet the name of the item definition .dat file
+     * @param name the unique name of the item within the set
+     * @return the new item or null if the set or item doesn't exist
+     */
+    public static ItemInInventory makeItemInInventory(String itemSet, String name) {
+        ItemDefinition definition = getDefinition(itemSet, name);
+        return definition == null ? null : definition.makeItemInInventory();
+    }
+
+    /**
+     * Reads and parses every definition of an item set, malformed lines are logged and skipped.
+     * @param itemSet the name of the item definition .dat file
+     * @return the definitions of the set keyed by item name, empty if the file can't be read
+     */
+    private static HashMap<String, ItemDefinition> loadItemSet(String itemSet) {
+        HashMap<String, ItemDefinition> definitions = new HashMap<>();
+        URI pathTo = URI.create((Run.JRT ? Run.GAME_ITEM_PATH + "/" : Run.GAME_ITEM_PATH) + itemSet + ".dat");
+        String[] itemDefs = FileOpUtils.getFileLines(pathTo);
+        if(itemDefs == null) {
+            return definitions;
+        }
+        for(String itemDef: itemDefs) {
+            if(itemDef.isBlank() || itemDef.startsWith("//")) {
+                continue;
+            }
+            String[] info = itemDef.split(",");
+            try {
+                String[] sprite = info[3].split(":");
+                TileSet spriteSheet = spriteSheets.computeIfAbsent(sprite[0].trim(),
+                        spritePath -> new TileSet("Items/" + spritePath, Run.TILE_SIZE)
+                );
+                definitions.put(info[0], new ItemDefinition(info[0], Integer.parseInt(info[1].trim()),
+                        Double.parseDouble(info[2].trim()), spriteSheet, Integer.parseInt(sprite[1].trim())
+                ));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                Run.programLogger.log(Level.WARNING, String.format("Malformed item definition in %s: %s", itemSet, itemDef));
+            }
+        }
+        Run.programLogger.log(Level.INFO, String.format("Loaded %d items from item set %s", definitions.size(), itemSet));
+        return definitions;
+    }
+
+}
@@ -1,9 +1,27 @@
 package org.dionthorn;
 
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelWriter;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 
 /**
@@ -11,29 +29,72 @@ import java.util.Random;
  */
 public class Map {
 
+    private static final int BINARY_MAGIC = 0x544D4150; // "TMAP"
+    private static final int BINARY_VERSION = 2;
+    // bytes per tile in the body of the .bin file, a tilesetID short followed by a tileID short
+    static final int BINARY_TILE_BYTES = Short.BYTES * 2;
+    // the most bytes read when only the header of the .bin file is needed, see readBinaryHeader
+    private static final int BINARY_HEADER_LIMIT = 64 * 1024;
+    // the tag lines every .meta file is written with, in the order they have always been written in
+    private static final MapTile.TileType[] ALWAYS_SAVED_TAGS = { MapTile.TileType.FIRE, MapTile.TileType.IMPASSABLE };
+    // one save at a time on a thread that isn't a daemon, so a save in progress is finished before the game exits,
+    // the thread ends once idle so it never keeps the game running on its own
+    private static final ExecutorService saveExecutor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "MapSaver")
+    );
     private final String PATH;
     private final String metaPATH;
-    private String metaEnemies;
-    private String metaAllies;
-    private String metaStartLoc;
-    private String metaItems;
+    private final String binaryPATH;
+    // spawns parsed once from the .meta file, shared with callers and never modified, see SpawnRecord
+    private SpawnRecord[] enemySpawns = new SpawnRecord[0];
+    private SpawnRecord[] allySpawns = new SpawnRecord[0];
+    private SpawnRecord[] itemSpawns = new SpawnRecord[0];
+    private int startX;
+    private int startY;
     private int TILE_SIZE = 32;
-    private MapTile[][] mapTiles;
+    // row major packed tiles, see MapTile for the layout of each int
+    private int[] mapTiles;
+    // one bit per tile for every TileType, indexed by ordinal, see clearTagLayers
+    private long[][] tagLayers;
     private int mapWidth;
     private int mapHeight;
     private final ArrayList<TileSet> tileSets = new ArrayList<>();
     private Image icon;
+    private MapChunkCache chunkCache;
+    // serves the tiles of large maps from the .bin file in place of mapTiles and tagLayers, see MapChunkStreamer
+    private MapChunkStreamer streamer;
+    // tileset paths from the header, available before the tilesets themselves are loaded
+    private String[] headerTileSetPaths = new String[0];
+    private volatile boolean loaded;
+    // the last save requested with saveDataInBackground, see awaitSave
+    private volatile Future<?> pendingSave;
+    // the state of this Map as last loaded or saved, restored by resetMapData, see takeSnapshot
+    private int[] pristineTiles;
+    private long[][] pristineTagLayers;
+    private TileSet[] pristineTileSets;
+    private SpawnRecord[][] pristineSpawns;
+    private int[] pristineStart;
+    // last modified times of the .dat, .meta and .bin files when the snapshot was taken
+    private volatile long[] pristineStamps;
+    private boolean tilesModified;
+    // the PhysicalEntities standing on each tile in the order they arrived, kept up to date by PhysicalEntity
+    private TileGrid<ArrayList<PhysicalEntity>> occupants;
+    // the items lying on each tile in the order they were dropped, see addGroundItem
+    private TileGrid<ArrayList<ItemOnMap>> groundItems;
 
     /**
      * Default Map Constructor will take a .dat file path and generate based on that,
      * the .meta file is assumed to have the same name as the .dat file.
+     * Only the header of the map is read, its tiles, tilesets and meta data are loaded by ensureLoaded or
+     * loadMapData once the map is actually used.
      * @param datPath the associated .dat file path to generate the map with.
      */
     public Map(String datPath) {
         PATH = datPath;
         String[] tempStr = datPath.split("\\.");
         metaPATH = tempStr[0] + ".meta";
-        loadMapData();
+        binaryPATH = tempStr[0] + ".bin";
+        readMapHeader();
     }
 
     /**
@@ -49,103 +110,548 @@ public class Map {
         for(String path: tilePaths) {
             tileSets.add(new TileSet(path.replaceAll("/", ""), TILE_SIZE));
         }
-        mapTiles = new MapTile[mapHeight][mapWidth];
+        mapTiles = new int[mapWidth * mapHeight];
         for(int y=0; y<mapHeight; y++) {
             for(int x=0; x<mapWidth; x++) {
                 int setID = rand.nextInt(tilePaths.length);
-                mapTiles[y][x] =  new MapTile(setID, rand.nextInt(tileSets.get(setID).getTiles().length - 1));
+                mapTiles[(y * mapWidth) + x] = MapTile.pack(setID,
+                        rand.nextInt(tileSets.get(setID).getTotalTiles() - 1)
+                );
             }
         }
-        // TileTypes are set in MapTile use .getType or .tagTileType(TileType) methods. Already has .DEFAULT type
-        metaAllies = "AO1,5,18,martial:ALLIES";
-        metaEnemies = "MO2,20,19,magic:ENEMIES";
-        metaStartLoc = "5,17,:STARTLOC";
-        metaItems = ":ITEMS";
+        // TileTypes come from the TileSet meta data, a new random map has none so all are DEFAULT
+        clearTagLayers();
+        allySpawns = SpawnRecord.parseMetaLine("AO1,5,18,martial:ALLIES", SpawnRecord.Kind.ALLY);
+        enemySpawns = SpawnRecord.parseMetaLine("MO2,20,19,magic:ENEMIES", SpawnRecord.Kind.ENEMY);
+        startX = 5;
+        startY = 17;
         metaPATH = PATH.split("\\.")[0] + ".meta";
+        binaryPATH = PATH.split("\\.")[0] + ".bin";
+        loaded = true;
     }
 
-    public void loadMapData() {
-        // load .dat information
+    /**
+     * Parses the text .dat file into this Maps tiles and tilesets, see saveData for the format.
+     */
+    private void loadTextMapData() {
         boolean first = true;
         String[] data = FileOpUtils.getFileLines(URI.create(PATH));
-        int xCount = 0;
         int yCount = 0;
         for(String line: data) {
-            String[] splitLine = line.replaceAll(" ", "").split(",");
             if(first) {
-                int WIDTH_DATA = 0;
-                int HEIGHT_DATA = 1;
-                int TILE_DATA = 2;
-                int IMG_SRC_DATA = 3;
-                mapWidth = Integer.parseInt(splitLine[WIDTH_DATA]);
-                mapHeight = Integer.parseInt(splitLine[HEIGHT_DATA]);
-                mapTiles = new MapTile[mapHeight][mapWidth];
-                TILE_SIZE = Integer.parseInt(splitLine[TILE_DATA]);
+                readTextHeader(line);
+                mapTiles = new int[mapWidth * mapHeight];
                 tileSets.clear();
-                for(int step = IMG_SRC_DATA; step<splitLine.length; step++) {
-                    tileSets.add(new TileSet(splitLine[step], TILE_SIZE));
+                for(String path: headerTileSetPaths) {
+                    tileSets.add(new TileSet(path, TILE_SIZE));
                 }
                 first = false;
-            } else {
-                for(String toProcess: splitLine) {
-                    String[] finalSplit = toProcess.split(":");
-                    mapTiles[yCount][xCount] = new MapTile(Integer.parseInt(finalSplit[0]),
-                            Integer.parseInt(finalSplit[1])
-                    );
-                    xCount++;
-                }
-                xCount = 0;
+            } else if(yCount < mapHeight) {
+                parseTextRow(line, mapTiles, yCount * mapWidth);
                 yCount++;
             }
         }
+    }
+
+    /**
+     * Parses one row line of the text .dat file into packed tiles, see saveData for the format.
+     * Tiles beyond the width of this Map are ignored and missing tiles are left as they were.
+     * @param line the row line of the .dat file
+     * @param tiles the row major packed tiles to fill
+     * @param offset the index within tiles of the first tile of the row
+     */
+    private void parseTextRow(String line, int[] tiles, int offset) {
+        String[] splitLine = line.replaceAll(" ", "").split(",");
+        for(int xCount = 0; xCount < Math.min(splitLine.length, mapWidth); xCount++) {
+            String[] finalSplit = splitLine[xCount].split(":");
+            tiles[offset + xCount] = MapTile.pack(Integer.parseInt(finalSplit[0]), Integer.parseInt(finalSplit[1]));
+        }
+    }
+
+    /**
+     * Will write the .bin file of a Map large enough to stream straight from its text .dat file one row at a time,
+     * so its tiles are never all held in memory, see saveBinaryMapData for the format.
+     * Maps that aren't on the regular file system or are too small to stream are left for loadTextMapData.
+     * @return true if the .bin file was written and can be loaded streamed
+     */
+    private boolean convertTextMapData() {
+        URI datFile = URI.create(PATH);
+        if(!datFile.getScheme().equals("file")) {
+            return false;
+        }
+        long startTime = System.nanoTime();
+        try(BufferedReader reader = FileOpUtils.getFileReader(datFile)) {
+            String line = reader.readLine();
+            if(line == null) {
+                return false;
+            }
+            readTextHeader(line);
+            if(!MapChunkStreamer.shouldStream(mapWidth, mapHeight)) {
+                return false;
+            }
+            // the .bin file of a streamed map holds its saved edits, keep it rather than silently replacing it
+            URI binaryFile = URI.create(binaryPATH);
+            if(FileOpUtils.doesFileExist(binaryFile)) {
+                Run.programLogger.log(Level.WARNING, String.format("Map %s is older than %s, keeping it as .bin.bak",
+                        binaryPATH, PATH)
+                );
+                FileOpUtils.moveFile(binaryFile, URI.create(binaryPATH + ".bak"));
+            }
+            try(AtomicFileWriter writer = new AtomicFileWriter(URI.create(binaryPATH))) {
+                writeBinaryHeader(writer, headerTileSetPaths);
+                int[] row = new int[mapWidth];
+                for(int y = 0; y < mapHeight; y++) {
+                    Arrays.fill(row, 0);
+                    line = reader.readLine();
+                    if(line != null) {
+                        parseTextRow(line, row, 0);
+                    }
+                    for(int tile: row) {
+                        writer.putShort((short) MapTile.getTileSet(tile)).putShort((short) MapTile.getTileID(tile));
+                    }
+                }
+                writer.commit();
+            }
+            Run.programLogger.log(Level.INFO, String.format("Converted %dx%d map %s to .bin in %d ms", mapWidth,
+                    mapHeight, PATH, (System.nanoTime() - startTime) / 1000000)
+            );
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Will load the tiles of this Map from its .bin file when it is at least as new as the .dat file,
+     * otherwise from the text .dat file, then apply the .meta file.
+     * After a .dat load on the regular file system the .bin file is written so the next load can skip the text,
+     * maps large enough to stream are converted to a .bin file a row at a time and then streamed from it instead.
+     * Different maps can be loaded on different threads at the same time, see MapLoader.
+     */
+    public synchronized void loadMapData() {
+        awaitSave();
+        long startTime = System.nanoTime();
+        // finish writing chunks a streamed save was cut short in, see MapChunkStreamer.flush
+        FileOpUtils.replayFileJournal(URI.create(binaryPATH), MapChunkStreamer.getJournalFile(URI.create(binaryPATH)));
+        streamer = null;
+        occupants = null;
+        groundItems = null;
+        boolean binaryLoaded = isBinaryCurrent() && loadBinaryMapData();
+        if(!binaryLoaded) {
+            binaryLoaded = convertTextMapData() && loadBinaryMapData();
+        }
+        if(!binaryLoaded) {
+            loadTextMapData();
+        }
         // load .meta information
         String[] tileMetaData = FileOpUtils.getFileLines(URI.create(metaPATH));
         int tileID;
         int tileSetID;
         for(String line: tileMetaData) {
-            if(line.contains("FIRE")) {
-                String[] tileFire = line.split(":")[0].split(",");
-                for(String tag: tileFire) {
+            MapTile.TileType tagType = getMetaTagType(line);
+            if(tagType != null) {
+                String[] tileTags = line.split(":")[0].split(",");
+                for(String tag: tileTags) {
                     if(!tag.equals("")) {
                         String[] tempHolder = tag.split("/");
                         tileSetID = Integer.parseInt(tempHolder[0]);
                         tileID = Integer.parseInt(tempHolder[1]);
-                        getTileSet(tileSetID).setMetaFireID(tileID, false);
-                        for(MapTile[] mapRow: mapTiles) {
-                            for(MapTile tile: mapRow) {
-                                if(tile.getTileID() == tileID && tile.getTileSet() == tileSetID) {
-                                    tile.tagTileType(MapTile.TileType.FIRE);
-                                }
-                            }
-                        }
-                    }
-                }
-            } else if(line.contains("IMPASSABLE")) {
-                String[] tileImpassable = line.split(":")[0].split(",");
-                for (String tag: tileImpassable) {
-                    if (!tag.equals("")) {
-                        String[] tempHolder = tag.split("/");
-                        tileSetID = Integer.parseInt(tempHolder[0]);
-                        tileID = Integer.parseInt(tempHolder[1]);
-                        getTileSet(tileSetID).setMetaImpassableID(tileID, false);
-                        for(MapTile[] mapRow: mapTiles) {
-                            for(MapTile tile: mapRow) {
-                                if(tile.getTileID() == tileID && tile.getTileSet() == tileSetID) {
-                                    tile.tagTileType(MapTile.TileType.IMPASSABLE);
-                                }
-                            }
-                        }
+                        getTileSet(tileSetID).setMetaTagID(tagType, tileID, false);
                     }
                 }
             } else if(line.contains("ENEMIES")) {
-                metaEnemies = line;
+                enemySpawns = SpawnRecord.parseMetaLine(line, SpawnRecord.Kind.ENEMY);
             } else if(line.contains("ALLIES")) {
-                metaAllies = line;
+                allySpawns = SpawnRecord.parseMetaLine(line, SpawnRecord.Kind.ALLY);
             } else if(line.contains("STARTLOC")) {
-                metaStartLoc = line;
+                // 5,17,:STARTLOC
+                String[] startLoc = line.split(":")[0].split(",");
+                startX = Integer.parseInt(startLoc[0].trim());
+                startY = Integer.parseInt(startLoc[1].trim());
             } else if(line.contains("ITEMS")) {
-                metaItems = line;
+                itemSpawns = SpawnRecord.parseMetaLine(line, SpawnRecord.Kind.ITEM);
+            }
+        }
+        // the .bin file holds no TileTypes, they always come from the tileset tags of the .meta file
+        refreshTileTypes();
+        if(!binaryLoaded && URI.create(PATH).getScheme().equals("file")) {
+            saveBinaryMapData(mapTiles, getTileSetPaths());
+        }
+        Run.programLogger.log(Level.INFO, String.format("Loaded %dx%d map %s from %s in %d ms", mapWidth, mapHeight,
+                PATH, streamer != null ? "streamed .bin" : binaryLoaded ? ".bin" : ".dat",
+                (System.nanoTime() - startTime) / 1000000)
+        );
+        loaded = true;
+        takeSnapshot();
+        if(chunkCache != null) {
+            chunkCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Will return this Map to the state it was last loaded or saved in. The in memory snapshot is restored without
+     * touching the files unless the .dat, .meta or .bin file changed on disk since, or there is no snapshot yet,
+     * in which case the map is reloaded with loadMapData. Edited chunks of a streamed map are dropped the same way.
+     */
+    public synchronized void resetMapData() {
+        if(pristineTileSets == null || isChangedOnDisk() || (streamer != null && streamer.isDirty())) {
+            loadMapData();
+            return;
+        }
+        occupants = null;
+        groundItems = null;
+        if(streamer == null) {
+            mapTiles = pristineTiles.clone();
+            tagLayers = new long[pristineTagLayers.length][];
+            for(int layer = 0; layer < tagLayers.length; layer++) {
+                if(pristineTagLayers[layer] != null) {
+                    tagLayers[layer] = pristineTagLayers[layer].clone();
+                }
+            }
+        }
+        tileSets.clear();
+        for(TileSet tileSet: pristineTileSets) {
+            tileSets.add(new TileSet(tileSet));
+        }
+        enemySpawns = pristineSpawns[0];
+        allySpawns = pristineSpawns[1];
+        itemSpawns = pristineSpawns[2];
+        startX = pristineStart[0];
+        startY = pristineStart[1];
+        if(tilesModified && chunkCache != null) {
+            chunkCache.invalidateAll();
+        }
+        tilesModified = false;
+        Run.programLogger.log(Level.INFO, "Restored map " + PATH + " from memory");
+    }
+
+    /**
+     * Keeps a copy of the current tiles, TileType layers, tileset meta data and map meta data of this Map along
+     * with the last modified times of its files, see resetMapData. Streamed maps keep no copy of their tiles.
+     */
+    private void takeSnapshot() {
+        if(streamer == null) {
+            pristineTiles = mapTiles.clone();
+            pristineTagLayers = new long[tagLayers.length][];
+            for(int layer = 0; layer < tagLayers.length; layer++) {
+                if(tagLayers[layer] != null) {
+                    pristineTagLayers[layer] = tagLayers[layer].clone();
+                }
+            }
+        }
+        pristineTileSets = new TileSet[tileSets.size()];
+        for(int step = 0; step < pristineTileSets.length; step++) {
+            pristineTileSets[step] = new TileSet(tileSets.get(step));
+        }
+        pristineSpawns = new SpawnRecord[][] { enemySpawns, allySpawns, itemSpawns };
+        pristineStart = new int[] { startX, startY };
+        pristineStamps = getFileStamps();
+        tilesModified = false;
+    }
+
+    /**
+     * Returns true if the .dat, .meta or .bin file of this Map was modified since the snapshot was taken.
+     * @return true if the files differ from the snapshot
+     */
+    private boolean isChangedOnDisk() {
+        return !Arrays.equals(pristineStamps, getFileStamps());
+    }
+
+    /**
+     * Returns the last modified times of the .dat, .meta and .bin files of this Map, -1 for a missing file.
+     * @return the [dat, meta, bin] last modified times
+     */
+    private long[] getFileStamps() {
+        return new long[] {
+                FileOpUtils.getLastModified(URI.create(PATH)),
+                FileOpUtils.getLastModified(URI.create(metaPATH)),
+                FileOpUtils.getLastModified(URI.create(binaryPATH))
+        };
+    }
+
+    /**
+     * Will fully load this Map with loadMapData if only its header has been read so far.
+     */
+    public synchronized void ensureLoaded() {
+        if(!loaded) {
+            loadMapData();
+        }
+    }
+
+    /**
+     * Returns true once the tiles, tilesets and meta data of this Map have been loaded.
+     * @return true if the map is fully loaded
+     */
+    public boolean isLoaded() { return loaded; }
+
+    /**
+     * Returns the TileType a .meta line tags tiles with, meta tag lines are of the form {tileSetID}/{tileID},:{TYPE}
+     * @param line the line of the .meta file
+     * @return the TileType of the line or null if the line isn't a tile tag line
+     */
+    private static MapTile.TileType getMetaTagType(String line) {
+        for(MapTile.TileType type: MapTile.TileType.values()) {
+            if(type != MapTile.TileType.DEFAULT && line.trim().endsWith(":" + type.name())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Will rebuild the TileTypes of every tile from the meta data of the tilesets of this Map, must be called
+     * after the tags of a TileSet are changed for hasTag to see the change. Streamed maps read the TileSet tables
+     * on every lookup and need no rebuild.
+     */
+    public synchronized void refreshTileTypes() {
+        if(streamer == null && mapTiles != null) {
+            applyTileTypes();
+        }
+    }
+
+    /**
+     * Will rebuild every TileType bit layer from the type lookup table of each tiles TileSet in a single pass.
+     */
+    private void applyTileTypes() {
+        clearTagLayers();
+        for(int index=0; index<mapTiles.length; index++) {
+            int tile = mapTiles[index];
+            setTagBits(index, getTypeFlags(MapTile.getTileSet(tile), MapTile.getTileID(tile)));
+        }
+    }
+
+    /**
+     * Allocates an empty bit layer for every TileType other than DEFAULT sized to this Map.
+     * Bit (y * mapWidth) + x of a layer is set when the tile at x,y carries that TileType.
+     */
+    private void clearTagLayers() {
+        int words = ((mapWidth * mapHeight) + 63) >>> 6;
+        tagLayers = new long[MapTile.TileType.values().length][];
+        for(MapTile.TileType type: MapTile.TileType.values()) {
+            if(type != MapTile.TileType.DEFAULT) {
+                tagLayers[type.ordinal()] = new long[words];
+            }
+        }
+    }
+
+    /**
+     * Sets the bits of the tile at index in every TileType layer to match flags, see MapTile.typeFlag.
+     * @param index the row major index of the tile
+     * @param flags the TileType flags of the tile
+     */
+    private void setTagBits(int index, int flags) {
+        for(MapTile.TileType type: MapTile.TileType.values()) {
+            if(type != MapTile.TileType.DEFAULT) {
+                if((flags & MapTile.typeFlag(type)) != 0) {
+                    tagLayers[type.ordinal()][index >>> 6] |= 1L << index;
+                } else {
+                    tagLayers[type.ordinal()][index >>> 6] &= ~(1L << index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the TileType flags tagged on tileID of the TileSet at setIndex, 0 if setIndex isn't associated.
+     * @param setIndex the tileset index associated to this map
+     * @param tileID the tileid index within the tileset
+     * @return the type flags of the tile
+     */
+    private int getTypeFlags(int setIndex, int tileID) {
+        if(setIndex > tileSets.size() - 1) {
+            return 0;
+        }
+        return tileSets.get(setIndex).getTypeFlags(tileID);
+    }
+
+    /**
+     * Returns true if the .bin file exists and is at least as new as the .dat file it was made from.
+     * @return true if the .bin file can be used in place of the .dat file
+     */
+    private boolean isBinaryCurrent() {
+        long binaryModified = FileOpUtils.getLastModified(URI.create(binaryPATH));
+        return binaryModified != -1 && binaryModified >= FileOpUtils.getLastModified(URI.create(PATH));
+    }
+
+    /**
+     * Reads the header of the .bin file into the size, tile size and tileset paths of this Map.
+     * See saveBinaryMapData for the format.
+     * @param buffer the start of the .bin file, left positioned at the first tile
+     * @return true if the header is of a known format
+     * @throws BufferUnderflowException if the header is cut short or holds impossible sizes
+     */
+    private boolean readBinaryHeader(ByteBuffer buffer) {
+        if(buffer.getInt() != BINARY_MAGIC || buffer.getInt() != BINARY_VERSION) {
+            Run.programLogger.log(Level.WARNING, "Unknown map binary format: " + binaryPATH);
+            return false;
+        }
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int tileSize = buffer.getInt();
+        if(width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new BufferUnderflowException();
+        }
+        mapWidth = width;
+        mapHeight = height;
+        TILE_SIZE = tileSize;
+        String[] paths = new String[checkCount(buffer, buffer.getInt(), Integer.BYTES)];
+        for(int step = 0; step < paths.length; step++) {
+            byte[] pathBytes = new byte[checkCount(buffer, buffer.getInt(), Byte.BYTES)];
+            buffer.get(pathBytes);
+            paths[step] = new String(pathBytes, StandardCharsets.UTF_8);
+        }
+        headerTileSetPaths = paths;
+        return true;
+    }
+
+    /**
+     * Returns count once it is known the buffer holds at least count values of size bytes.
+     * @param buffer the buffer the values are read from
+     * @param count the amount of values read from the buffer
+     * @param size the size in bytes of each value
+     * @return count
+     * @throws BufferUnderflowException if count is negative or more than the buffer holds
+     */
+    private static int checkCount(ByteBuffer buffer, int count, int size) {
+        if(count < 0 || count > buffer.remaining() / size) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the header of the .bin file of this Map, see saveBinaryMapData for the format.
+     * @param writer the writer of the .bin file
+     * @param paths the tileset paths of this Map
+     * @throws IOException if the header can't be written
+     */
+    private void writeBinaryHeader(AtomicFileWriter writer, String[] paths) throws IOException {
+        writer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION);
+        writer.putInt(mapWidth).putInt(mapHeight).putInt(TILE_SIZE).putInt(paths.length);
+        for(String path: paths) {
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            writer.putInt(pathBytes.length).write(ByteBuffer.wrap(pathBytes));
+        }
+    }
+
+    /**
+     * Reads the first line of the text .dat file into the size, tile size and tileset paths of this Map.
+     * See saveData for the format.
+     * @param line the first line of the .dat file
+     */
+    private void readTextHeader(String line) {
+        String[] splitLine = line.replaceAll(" ", "").split(",");
+        int WIDTH_DATA = 0;
+        int HEIGHT_DATA = 1;
+        int TILE_DATA = 2;
+        int IMG_SRC_DATA = 3;
+        mapWidth = Integer.parseInt(splitLine[WIDTH_DATA]);
+        mapHeight = Integer.parseInt(splitLine[HEIGHT_DATA]);
+        TILE_SIZE = Integer.parseInt(splitLine[TILE_DATA]);
+        String[] paths = new String[Math.max(splitLine.length - IMG_SRC_DATA, 0)];
+        System.arraycopy(splitLine, IMG_SRC_DATA, paths, 0, paths.length);
+        headerTileSetPaths = paths;
+    }
+
+    /**
+     * Reads only the header of this Map from its .bin file when current otherwise from the first line of its
+     * .dat file, so a Map can be listed without parsing its tiles or slicing its tilesets.
+     */
+    private void readMapHeader() {
+        if(isBinaryCurrent()) {
+            ByteBuffer buffer = FileOpUtils.readFileRegion(URI.create(binaryPATH), 0, BINARY_HEADER_LIMIT);
+            try {
+                if(buffer != null && readBinaryHeader(buffer)) {
+                    return;
+                }
+            } catch (BufferUnderflowException e) {
+                Run.programLogger.log(Level.WARNING, "Map binary is corrupt: " + binaryPATH);
+            }
+        }
+        String firstLine = FileOpUtils.getFirstFileLine(URI.create(PATH));
+        if(firstLine != null) {
+            readTextHeader(firstLine);
+        }
+    }
+
+    /**
+     * Reads this Maps tiles and tilesets from the .bin file, the header is read first with a small read and the
+     * body only once its size is known to match. Maps on the regular file system large enough to stream only read
+     * the header, their tiles are then read a chunk at a time by a MapChunkStreamer.
+     * See saveBinaryMapData for the format.
+     * @return true if the .bin file was valid and loaded
+     */
+    private boolean loadBinaryMapData() {
+        URI binaryFile = URI.create(binaryPATH);
+        ByteBuffer header = FileOpUtils.readFileRegion(binaryFile, 0, BINARY_HEADER_LIMIT);
+        if(header == null) {
+            return false;
+        }
+        try {
+            if(!readBinaryHeader(header)) {
+                return false;
+            }
+            long bodyOffset = header.position();
+            long tileCount = (long) mapWidth * mapHeight;
+            if(FileOpUtils.getFileSize(binaryFile) < bodyOffset + (tileCount * BINARY_TILE_BYTES)) {
+                throw new BufferUnderflowException();
+            }
+            String[] paths = headerTileSetPaths;
+            boolean stream = MapChunkStreamer.shouldStream(mapWidth, mapHeight) &&
+                    binaryFile.getScheme().equals("file");
+            if(!stream && tileCount * BINARY_TILE_BYTES > Integer.MAX_VALUE) {
+                Run.programLogger.log(Level.WARNING, "Map binary too large to load whole: " + binaryPATH);
+                return false;
+            }
+            ByteBuffer body = null;
+            if(!stream) {
+                body = FileOpUtils.readFileRegion(binaryFile, bodyOffset, (int) (tileCount * BINARY_TILE_BYTES));
+                if(body == null) {
+                    return false;
+                }
+            }
+            tileSets.clear();
+            for(String path: paths) {
+                tileSets.add(new TileSet(path, TILE_SIZE));
+            }
+            if(stream) {
+                mapTiles = null;
+                tagLayers = null;
+                streamer = new MapChunkStreamer(this, binaryFile, bodyOffset);
+                return true;
+            }
+            mapTiles = new int[mapWidth * mapHeight];
+            for(int index = 0; index < mapTiles.length; index++) {
+                mapTiles[index] = MapTile.pack(body.getShort() & MapTile.MAX_TILE_SET,
+                        body.getShort() & MapTile.MAX_TILE_ID
+                );
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            Run.programLogger.log(Level.WARNING, "Map binary is corrupt: " + binaryPATH);
+            return false;
+        }
+    }
+
+    /**
+     * Will write this Maps tiles to the .bin file, replacing any file of the same name through AtomicFileWriter.
+     * The .bin file is a header of ints: magic, version, width, height, tilesize, tileset count followed by each
+     * tileset path as a length prefixed UTF-8 string. Then for each tile in row major order a short tilesetID
+     * followed by a short tileID. TileTypes are not stored, they are resolved from the .meta file on every load.
+     * @param tiles the row major packed tiles to write
+     * @param tileSetPaths the tileset paths of this Map
+     */
+    private void saveBinaryMapData(int[] tiles, String[] tileSetPaths) {
+        try(AtomicFileWriter writer = new AtomicFileWriter(URI.create(binaryPATH))) {
+            writeBinaryHeader(writer, tileSetPaths);
+            for(int tile: tiles) {
+                writer.putShort((short) MapTile.getTileSet(tile)).putShort((short) MapTile.getTileID(tile));
             }
+            writer.commit();
+            Run.programLogger.log(Level.INFO, String.format("File: %s Successfully Wrote Data", URI.create(binaryPATH).getPath()));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -160,74 +666,354 @@ public class Map {
      * of a tile and 1:0 is the tilesetID:tileID.
      * The .meta file will be several lines of meta data where associated data is tagged at the end with a :{type}
      * where type is the meta tag such as 5,7,:STARTLOC where :STARTLOC is the meta tag.
+     * A name.bin file holding the same tiles in binary is written as well, see saveBinaryMapData.
+     * Every file is written to a temporary file and renamed over the old one, see AtomicFileWriter.
+     * A streamed map only writes its .meta file and its edited chunks in place into the .bin file, see
+     * MapChunkStreamer.flush, so saving costs the size of the edits rather than of the map. Its .bin file is then
+     * the copy of record of its tiles and its .dat file is left as it was last converted from.
+     * The files are written on the calling thread, see saveDataInBackground.
      */
     public void saveData() {
-        // Write .dat File
-        String[] dataAsString = new String[mapHeight + 1];
+        saveData(false);
+    }
+
+    /**
+     * Will save this Map like saveData but write its files on a background thread so a large map never stalls the
+     * JavaFX application thread. The state of the map is copied before this returns so it can keep being edited,
+     * saves are written one at a time in the order they were requested and loadMapData waits for them.
+     */
+    public void saveDataInBackground() {
+        saveData(true);
+    }
+
+    /**
+     * Copies everything the files of this Map are written from then writes them, see saveData.
+     * @param background true to write the files on the save thread rather than the calling thread
+     */
+    private void saveData(boolean background) {
+        int[] tiles = streamer == null ? mapTiles.clone() : null;
+        String[] tileSetPaths = getTileSetPaths();
+        String[] metaLines = getMetaLines();
+        MapChunkStreamer saving = streamer;
+        // what is being saved is now the state resetMapData returns to
+        takeSnapshot();
+        Runnable write = () -> writeData(tiles, tileSetPaths, metaLines, saving);
+        if(background) {
+            pendingSave = saveExecutor.submit(write);
+        } else {
+            awaitSave();
+            write.run();
+        }
+    }
+
+    /**
+     * Writes the files of this Map from the copies taken by saveData. Only the copies and the paths are read so no
+     * lock on this Map is needed, loadMapData holds that lock while it waits for a save with awaitSave.
+     * @param tiles the tiles to write or null for a streamed map
+     * @param tileSetPaths the tileset paths of this Map
+     * @param metaLines the lines of the .meta file
+     * @param saving the streamer of a streamed map or null
+     */
+    private void writeData(int[] tiles, String[] tileSetPaths, String[] metaLines,
+                                        MapChunkStreamer saving) {
+        if(saving != null) {
+            FileOpUtils.writeFileLines(URI.create(metaPATH), metaLines);
+            if(saving.flush()) {
+                // the .bin file must stay at least as new as the .dat file to keep being used
+                FileOpUtils.touchFile(URI.create(binaryPATH));
+            }
+        } else {
+            writeTextMapData(tiles, tileSetPaths);
+            // Write .meta File
+            FileOpUtils.writeFileLines(URI.create(metaPATH), metaLines);
+            // Write .bin File last so it is never older than the .dat it mirrors
+            saveBinaryMapData(tiles, tileSetPaths);
+        }
+        // the files now match the snapshot taken by saveData
+        pristineStamps = getFileStamps();
+    }
+
+    /**
+     * Will block until the last save requested with saveDataInBackground has been written.
+     */
+    private void awaitSave() {
+        Future<?> save = pendingSave;
+        if(save != null) {
+            try {
+                save.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Will write the .dat file of this Map, see saveData for the format. Tiles are encoded straight into the
+     * writers buffer and the file is replaced in one step.
+     * @param tiles the row major packed tiles to write
+     * @param tileSetPaths the tileset paths of this Map
+     */
+    private void writeTextMapData(int[] tiles, String[] tileSetPaths) {
         StringBuilder formattedPaths = new StringBuilder();
-        for(String path: getTileSetPaths()) {
+        for(String path: tileSetPaths) {
             formattedPaths.append(path).append(", ");
         }
-        dataAsString[0] = String.format("%d, %d, %d, %s", mapWidth, mapHeight, TILE_SIZE, formattedPaths.toString().replaceAll("/", ""));
-        int yCount = 0;
-        int xCount = 0;
-        int lineCount = 1;
-        StringBuilder temp = new StringBuilder();
-        for(int i=0; i<mapWidth*mapHeight; i++) {
-            int tileID = mapTiles[yCount][xCount].getTileID();
-            int tileSetID = mapTiles[yCount][xCount].getTileSet();
-            temp.append(String.format("%d:%d, ", tileSetID, tileID));
-            xCount++;
-            if(xCount == mapWidth) {
-                dataAsString[lineCount] = temp.toString();
-                temp = new StringBuilder();
-                lineCount++;
-                xCount = 0;
-                yCount++;
+        try(AtomicFileWriter writer = new AtomicFileWriter(URI.create(PATH))) {
+            writer.write(String.format("%d, %d, %d, %s", mapWidth, mapHeight, TILE_SIZE,
+                    formattedPaths.toString().replaceAll("/", ""))
+            ).newLine();
+            for(int y=0; y<mapHeight; y++) {
+                for(int x=0; x<mapWidth; x++) {
+                    int tile = tiles[(y * mapWidth) + x];
+                    writer.writeInt(MapTile.getTileSet(tile)).write(':').writeInt(MapTile.getTileID(tile)).write(", ");
+                }
+                writer.newLine();
             }
+            writer.commit();
+            Run.programLogger.log(Level.INFO, String.format("File: %s Successfully Wrote Data", URI.create(PATH).getPath()));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
 
-        FileOpUtils.writeFileLines(URI.create(PATH), dataAsString);
-        // Write .meta File
-        dataAsString = new String[6];
-        dataAsString[0] = ""; // {tileSetID}/{tileID},:FIRE
-        for(int index=0; index<tileSets.size(); index++) {
-            for(int tileID: tileSets.get(index).getMetaFire()) {
-                dataAsString[0] += index + "/" + tileID + ",";
+    /**
+     * Returns the lines of the .meta file of this Map, see saveData for the format.
+     * @return the lines of the .meta file
+     */
+    private String[] getMetaLines() {
+        ArrayList<String> metaLines = new ArrayList<>();
+        // FIRE and IMPASSABLE lines are always written first in their original order, other TileTypes only get a
+        // line once they tag a tile so .meta files that don't use them stay unchanged
+        for(MapTile.TileType type: ALWAYS_SAVED_TAGS) {
+            metaLines.add(getMetaTagLine(type));
+        }
+        for(MapTile.TileType type: MapTile.TileType.values()) {
+            if(type != MapTile.TileType.DEFAULT && !Arrays.asList(ALWAYS_SAVED_TAGS).contains(type)) {
+                String tagLine = getMetaTagLine(type);
+                if(!tagLine.startsWith(":")) {
+                    metaLines.add(tagLine);
+                }
             }
         }
-        dataAsString[0] += ":FIRE";
-        dataAsString[1] = ""; // {tileSetID}/{tileID},:IMPASSABLE
+        metaLines.add(SpawnRecord.toMetaLine(enemySpawns, "ENEMIES"));
+        metaLines.add(SpawnRecord.toMetaLine(allySpawns, "ALLIES"));
+        metaLines.add(String.format("%d,%d,:STARTLOC", startX, startY));
+        metaLines.add(SpawnRecord.toMetaLine(itemSpawns, "ITEMS"));
+        return metaLines.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the .meta line tagging every tile of the tilesets of this Map that carries type.
+     * @param type the type of the line
+     * @return the tag line of the form {tileSetID}/{tileID},:{TYPE}, just :{TYPE} if no tile is tagged
+     */
+    private String getMetaTagLine(MapTile.TileType type) {
+        StringBuilder tagLine = new StringBuilder();
         for(int index=0; index<tileSets.size(); index++) {
-            for(int tileID: tileSets.get(index).getMetaImpassable()) {
-                dataAsString[1] += index + "/" + tileID + ",";
+            for(int tileID: tileSets.get(index).getMetaTagged(type)) {
+                tagLine.append(index).append("/").append(tileID).append(",");
             }
         }
-        dataAsString[1] += ":IMPASSABLE";
-        dataAsString[2] = metaEnemies;
-        dataAsString[3] = metaAllies;
-        dataAsString[4] = metaStartLoc;
-        dataAsString[5] = metaItems;
-        FileOpUtils.writeFileLines(URI.create(metaPATH), dataAsString);
+        return tagLine.append(":").append(type.name()).toString();
     }
 
     // Getters and Setters
     /**
-     * Returns an Image of the tile provided by its TileSet index and TileID associated with this Map.
+     * Will draw the tile provided by its TileSet index and TileID associated with this Map.
+     * An invalid TileSet index draws the 'blank' tile of the first TileSet and an invalid TileID draws the
+     * 'blank' tile of its TileSet.
+     * @param gc the graphics context to draw onto
+     * @param setIndex the tileset index associated to this map
+     * @param tileID the tileid index associated to this map
+     * @param x the x location to draw at
+     * @param y the y location to draw at
+     * @param w the width to draw the tile at
+     * @param h the height to draw the tile at
+     */
+    public void drawTile(GraphicsContext gc, int setIndex, int tileID, double x, double y, double w, double h) {
+        TileSet tileSet = resolveTileSet(setIndex);
+        tileSet.drawTile(gc, resolveTileID(setIndex, tileID), x, y, w, h);
+    }
+
+    /**
+     * Will copy the pixels of the tile provided by its TileSet index and TileID into the pixel writer at x,y.
+     * Invalid indexes are resolved to 'blank' tiles the same way as drawTile.
+     * @param pw the pixel writer to copy into
+     * @param setIndex the tileset index associated to this map
+     * @param tileID the tileid index associated to this map
+     * @param x the x location to copy to
+     * @param y the y location to copy to
+     */
+    public void writeTile(PixelWriter pw, int setIndex, int tileID, int x, int y) {
+        TileSet tileSet = resolveTileSet(setIndex);
+        tileSet.writeTile(pw, resolveTileID(setIndex, tileID), x, y);
+    }
+
+    /**
+     * Returns an ImageView showing the tile provided by its TileSet index and TileID from its TileSet atlas.
+     * Invalid indexes are resolved to 'blank' tiles the same way as drawTile.
      * @param setIndex the tileset index associated to this map
      * @param tileID the tileid index associated to this map
-     * @return the image of the tile at the provided setindex and tileid
+     * @return an image view of the tile at the provided setindex and tileid
      */
-    public Image getTile(int setIndex, int tileID) {
+    public ImageView makeTileView(int setIndex, int tileID) {
+        TileSet tileSet = resolveTileSet(setIndex);
+        ImageView view = new ImageView(tileSet.getAtlas());
+        view.setViewport(tileSet.getTileViewport(resolveTileID(setIndex, tileID)));
+        return view;
+    }
+
+    /**
+     * Returns the TileSet at setIndex or the first TileSet if setIndex isn't associated with this Map.
+     * @param setIndex the tileset index associated to this map
+     * @return the tileset to draw from
+     */
+    private TileSet resolveTileSet(int setIndex) {
         if(setIndex > tileSets.size() - 1) {
-            return tileSets.get(0).getBlank();
-        } else if(tileID > tileSets.get(setIndex).getTiles().length - 1) {
-            return tileSets.get(setIndex).getBlank();
-        } else {
-            return tileSets.get(setIndex).getTile(tileID);
+            return tileSets.get(0);
+        }
+        return tileSets.get(setIndex);
+    }
+
+    /**
+     * Returns tileID if it is valid for the TileSet at setIndex otherwise the TileID of the 'blank' tile.
+     * @param setIndex the tileset index associated to this map
+     * @param tileID the tileid index associated to this map
+     * @return the tile id to draw
+     */
+    private int resolveTileID(int setIndex, int tileID) {
+        if(setIndex > tileSets.size() - 1) {
+            return tileSets.get(0).getBlankID();
+        } else if(tileID > tileSets.get(setIndex).getTotalTiles() - 1) {
+            return tileSets.get(setIndex).getBlankID();
+        }
+        return tileID;
+    }
+
+    /**
+     * Returns the pre-rendered terrain chunk cache of this Map, creating it on first use.
+     * @return the chunk cache used to draw this maps terrain
+     */
+    public MapChunkCache getChunkCache() {
+        if(chunkCache == null) {
+            chunkCache = new MapChunkCache(this);
+        }
+        return chunkCache;
+    }
+
+    /**
+     * Will place entity on the tile at its x,y location alongside any entities already standing there.
+     * Entities outside of the map are ignored. The occupants are emptied whenever the map is loaded or reset.
+     * @param entity the entity to place
+     */
+    protected void addOccupant(PhysicalEntity entity) {
+        if(occupants == null) {
+            occupants = new TileGrid<>(mapWidth, mapHeight);
+        }
+        ArrayList<PhysicalEntity> standing = occupants.get(entity.getX(), entity.getY());
+        if(standing == null) {
+            standing = new ArrayList<>(1);
+            occupants.put(entity.getX(), entity.getY(), standing);
+        }
+        standing.add(entity);
+    }
+
+    /**
+     * Will remove entity from the tile at its x,y location, other entities on the same tile are left alone.
+     * @param entity the entity to remove
+     */
+    protected void removeOccupant(PhysicalEntity entity) {
+        ArrayList<PhysicalEntity> standing = occupants == null ? null : occupants.get(entity.getX(), entity.getY());
+        if(standing != null && standing.remove(entity) && standing.isEmpty()) {
+            occupants.remove(entity.getX(), entity.getY(), standing);
+        }
+    }
+
+    /**
+     * Returns the PhysicalEntity standing on the tile at x,y, the first to arrive when several share the tile.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return the entity on the tile or null if the tile is empty or outside of the map
+     */
+    public PhysicalEntity getOccupant(int x, int y) {
+        ArrayList<PhysicalEntity> standing = occupants == null ? null : occupants.get(x, y);
+        return standing == null ? null : standing.get(0);
+    }
+
+    /**
+     * Returns every PhysicalEntity standing on the tile at x,y in the order they arrived.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return an unmodifiable list of the entities on the tile, empty if there are none
+     */
+    public List<PhysicalEntity> getOccupants(int x, int y) {
+        ArrayList<PhysicalEntity> standing = occupants == null ? null : occupants.get(x, y);
+        return standing == null ? Collections.emptyList() : Collections.unmodifiableList(standing);
+    }
+
+    /**
+     * Will place item on the tile at its x,y location on top of any items already there.
+     * Items outside of the map are ignored. The items are emptied whenever the map is loaded or reset.
+     * @param item the item to place
+     */
+    public void addGroundItem(ItemOnMap item) {
+        if(groundItems == null) {
+            groundItems = new TileGrid<>(mapWidth, mapHeight);
+        }
+        ArrayList<ItemOnMap> pile = groundItems.get(item.getX(), item.getY());
+        if(pile == null) {
+            pile = new ArrayList<>(1);
+            groundItems.put(item.getX(), item.getY(), pile);
+        }
+        pile.add(item);
+    }
+
+    /**
+     * Returns the item on top of the tile at x,y, the last one placed there.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return the top item or null if there are no items on the tile
+     */
+    public ItemOnMap getGroundItem(int x, int y) {
+        ArrayList<ItemOnMap> pile = groundItems == null ? null : groundItems.get(x, y);
+        return pile == null ? null : pile.get(pile.size() - 1);
+    }
+
+    /**
+     * Returns every item on the tile at x,y from bottom to top.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return an unmodifiable list of the items on the tile, empty if there are none
+     */
+    public List<ItemOnMap> getGroundItems(int x, int y) {
+        ArrayList<ItemOnMap> pile = groundItems == null ? null : groundItems.get(x, y);
+        return pile == null ? Collections.emptyList() : Collections.unmodifiableList(pile);
+    }
+
+    /**
+     * Will remove item from the tile at its x,y location.
+     * @param item the item to remove
+     * @return true if the item was on the tile
+     */
+    public boolean removeGroundItem(ItemOnMap item) {
+        ArrayList<ItemOnMap> pile = groundItems == null ? null : groundItems.get(item.getX(), item.getY());
+        if(pile == null || !pile.remove(item)) {
+            return false;
+        }
+        if(pile.isEmpty()) {
+            groundItems.remove(item.getX(), item.getY(), pile);
         }
+        return true;
     }
 
+    /**
+     * Returns the MapChunkStreamer serving the tiles of this Map or null if its tiles are all in memory.
+     * @return the streamer of this map or null
+     */
+    public MapChunkStreamer getStreamer() { return streamer; }
+
     /**
      * Returns a int of the Maps tile size in pixels
      * @return the int of the maps tile size in pixels
@@ -235,10 +1021,66 @@ public class Map {
     public int getTileSize() { return TILE_SIZE; }
 
     /**
-     * Returns a MapTile[][] of the current Maps tiles
-     * @return the maptile matrix of the current maps tiles.
+     * Returns the tileSet index of the tile located at x,y.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return the tileset index of the target tile
+     */
+    public int getTileSetID(int x, int y) { return MapTile.getTileSet(getPackedTile(x, y)); }
+
+    /**
+     * Returns the tileID within its tileSet of the tile located at x,y.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return the tile id of the target tile
+     */
+    public int getTileID(int x, int y) { return MapTile.getTileID(getPackedTile(x, y)); }
+
+    /**
+     * Returns the packed tile located at x,y from memory or from the streamer of a streamed map.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return the packed tile, see MapTile
+     */
+    private int getPackedTile(int x, int y) {
+        if(streamer != null) {
+            return streamer.getTile(x, y);
+        }
+        return mapTiles[(y * mapWidth) + x];
+    }
+
+    /**
+     * Will set the tile located at x,y to the tileID of the tileSet at setIndex with the TileType tagged on it
+     * by its TileSet meta data, the terrain chunk holding the tile is rebuilt on the next draw. Locations outside of the map are ignored.
+     * @param x the target x location to set
+     * @param y the target y location to set
+     * @param setIndex the tileset index associated to this map
+     * @param tileID the tileid index within the tileset
+     */
+    public void setTile(int x, int y, int setIndex, int tileID) {
+        if(x < 0 || y < 0 || x >= mapWidth || y >= mapHeight) {
+            return;
+        }
+        if(streamer != null) {
+            streamer.setTile(x, y, MapTile.pack(setIndex, tileID));
+        } else {
+            int index = (y * mapWidth) + x;
+            mapTiles[index] = MapTile.pack(setIndex, tileID);
+            setTagBits(index, getTypeFlags(setIndex, tileID));
+        }
+        tilesModified = true;
+        if(chunkCache != null) {
+            chunkCache.invalidateTile(x, y);
+        }
+    }
+
+    /**
+     * Will set the tileID of the tile located at x,y keeping its tileSet.
+     * @param x the target x location to set
+     * @param y the target y location to set
+     * @param tileID the tileid index within the tiles current tileset
      */
-    public MapTile[][] getMapTiles() { return mapTiles; }
+    public void setTileID(int x, int y, int tileID) { setTile(x, y, getTileSetID(x, y), tileID); }
 
     /**
      * Returns a int of the current Maps width in Tiles
@@ -269,6 +1111,9 @@ public class Map {
      * @return the string array of the relative paths to all the tilesets associated to this map
      */
     public String[] getTileSetPaths() {
+        if(!loaded) {
+            return headerTileSetPaths.clone();
+        }
         tileSets.trimToSize();
         String[] tilePaths = new String[tileSets.size()];
         for(int step=0; step<tileSets.size(); step++) {
@@ -295,38 +1140,175 @@ public class Map {
     public TileSet getTileSet(int index) { return tileSets.get(index); }
 
     /**
-     * Will set the Maps mapTiles array to a new MapTile[][] set.
-     * @param newMap the new MapTile matrix to set this Maps mapTiles
+     * Returns the TileType of the tile located at x,y, when it carries several the first declared TileType wins.
+     * @param x the target x location to check
+     * @param y the target y location to check
+     * @return the MapTile.TileType of the target tile
      */
-    public void setMapTiles(MapTile[][] newMap) { mapTiles = newMap; }
+    public MapTile.TileType getTileType(int x, int y) {
+        for(MapTile.TileType type: MapTile.TileType.values()) {
+            if(type != MapTile.TileType.DEFAULT && hasTag(x, y, type)) {
+                return type;
+            }
+        }
+        return MapTile.TileType.DEFAULT;
+    }
 
     /**
-     * Returns the TileType of the MapTile located at x,y.
+     * Returns true if the tile located at x,y carries the TileType type, a tile can carry several.
      * @param x the target x location to check
      * @param y the target y location to check
-     * @return the MapTile.TileType of the target tile
+     * @param type the type to check for
+     * @return true if the tile is tagged as type, always false for DEFAULT
+     */
+    public boolean hasTag(int x, int y, MapTile.TileType type) {
+        if(type == MapTile.TileType.DEFAULT) {
+            return false;
+        } else if(streamer != null) {
+            // streamed maps resolve TileTypes from the TileSet meta data on demand
+            int tile = streamer.getTile(x, y);
+            return (getTypeFlags(MapTile.getTileSet(tile), MapTile.getTileID(tile)) & MapTile.typeFlag(type)) != 0;
+        }
+        int index = (y * mapWidth) + x;
+        return (tagLayers[type.ordinal()][index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the bit layer of the TileType type, bit (y * mapWidth) + x is set when the tile at x,y carries type.
+     * The layer is shared with this Map and must not be modified. Streamed maps have no layers.
+     * @param type the type of the layer
+     * @return the bit layer of the type or null for DEFAULT or a streamed map
+     */
+    public long[] getTagLayer(MapTile.TileType type) { return streamer != null ? null : tagLayers[type.ordinal()]; }
+
+    /**
+     * Returns the count of tiles tagged as type in the rectangle between the two corners inclusive.
+     * The corners can be provided in any order and are clamped to the map, whole words of tiles are counted at once.
+     * @param type the type to count
+     * @param x1 the x location of the first corner
+     * @param y1 the y location of the first corner
+     * @param x2 the x location of the second corner
+     * @param y2 the y location of the second corner
+     * @return the amount of tiles in the region tagged as type
+     */
+    public int countTagInRegion(MapTile.TileType type, int x1, int y1, int x2, int y2) {
+        if(type == MapTile.TileType.DEFAULT) {
+            return 0;
+        }
+        int fromX = Math.max(Math.min(x1, x2), 0);
+        int toX = Math.min(Math.max(x1, x2), mapWidth - 1);
+        int fromY = Math.max(Math.min(y1, y2), 0);
+        int toY = Math.min(Math.max(y1, y2), mapHeight - 1);
+        if(fromX > toX || fromY > toY) {
+            return 0;
+        } else if(streamer != null) {
+            int count = 0;
+            for(int y = fromY; y <= toY; y++) {
+                for(int x = fromX; x <= toX; x++) {
+                    if(hasTag(x, y, type)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+        long[] layer = tagLayers[type.ordinal()];
+        if(fromX == 0 && toX == mapWidth - 1) {
+            // full rows are one contiguous run of bits
+            return countBits(layer, fromY * mapWidth, (toY + 1) * mapWidth);
+        }
+        int count = 0;
+        for(int y = fromY; y <= toY; y++) {
+            count += countBits(layer, (y * mapWidth) + fromX, (y * mapWidth) + toX + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if any tile in the rectangle between the two corners inclusive is tagged as type.
+     * @param type the type to check for
+     * @param x1 the x location of the first corner
+     * @param y1 the y location of the first corner
+     * @param x2 the x location of the second corner
+     * @param y2 the y location of the second corner
+     * @return true if the region contains a tile tagged as type
+     */
+    public boolean isTagInRegion(MapTile.TileType type, int x1, int y1, int x2, int y2) {
+        return countTagInRegion(type, x1, y1, x2, y2) > 0;
+    }
+
+    /**
+     * Returns the count of set bits in layer from bit from inclusive to bit to exclusive.
+     * @param layer the bit layer to count
+     * @param from the first bit to count
+     * @param to the bit after the last bit to count
+     * @return the amount of set bits in the range
+     */
+    private static int countBits(long[] layer, int from, int to) {
+        int fromWord = from >>> 6;
+        int toWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if(fromWord == toWord) {
+            return Long.bitCount(layer[fromWord] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(layer[fromWord] & firstMask);
+        for(int word = fromWord + 1; word < toWord; word++) {
+            count += Long.bitCount(layer[word]);
+        }
+        return count + Long.bitCount(layer[toWord] & lastMask);
+    }
+
+    /**
+     * Returns the enemies placed by this Map, the array is shared and must not be modified.
+     * @return the enemy spawn records of this map
      */
-    public MapTile.TileType getTileType(int x, int y) { return mapTiles[y][x].getType(); }
+    public SpawnRecord[] getEnemySpawns() { return enemySpawns; }
 
     /**
-     * Returns the full line of meta data for Enemies information.
-     * @return a string that represents the enemies for this map
+     * Returns the allies placed by this Map, the array is shared and must not be modified.
+     * @return the ally spawn records of this map
      */
-    public String getMetaEnemies() { return metaEnemies; }
+    public SpawnRecord[] getAllySpawns() { return allySpawns; }
 
     /**
-     * Returns the full line of meta data for Allies information.
-     * @return a string that represents the allies for this map
+     * Returns the items placed by this Map, the array is shared and must not be modified.
+     * @return the item spawn records of this map
      */
-    public String getMetaAllies() { return metaAllies; }
+    public SpawnRecord[] getItemSpawns() { return itemSpawns; }
 
     /**
-     * Returns the full line of meta data for Start Location information.
-     * @return a string that represents the players start location for this map
+     * Returns the x location the player starts at on this Map.
+     * @return the start x location
      */
-    public String getMetaStartLoc() { return metaStartLoc; }
+    public int getStartX() { return startX; }
 
-    public String getMetaItems() { return metaItems; }
+    /**
+     * Returns the y location the player starts at on this Map.
+     * @return the start y location
+     */
+    public int getStartY() { return startY; }
+
+    /**
+     * Returns the name of this Map, the name of its .dat file without the extension.
+     * @return the name of the map
+     */
+    public String getName() {
+        String[] path = PATH.split("/");
+        return path[Math.max(path.length - 1, 0)].split("\\.")[0];
+    }
+
+    /**
+     * Returns the path the icon of this Map would have in the Maps folder of the art folder, mod maps use the
+     * mod art folder. The icon may not exist.
+     * @return the path of the maps icon
+     */
+    public String getIconPath() {
+        if(PATH.contains("Mod")) {
+            return Run.MOD_ART_PATH + "/Maps/" + getName() + "_Icon.png";
+        }
+        return Run.GAME_ART_PATH + "/Maps/" + getName() + "_Icon.png";
+    }
 
     /**
      * Returns the associated icon image if one exists in the /art folder
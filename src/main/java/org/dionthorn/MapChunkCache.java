@@ -0,0 +1,192 @@
+package org.dionthorn;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+/**
+ * The MapChunkCache pre-renders the static terrain of a Map into square chunk images of CHUNK_SIZE * CHUNK_SIZE tiles.
+ * Instead of one drawImage call per visible tile every frame, the renderer blits the few chunks that overlap the
+ * view area. Chunks are built lazily the first time they are needed and are only rebuilt after being invalidated,
+ * which happens when a tile is painted through the DevMenu or the map data is reloaded.
+ */
+public class MapChunkCache {
+
+    public static final int CHUNK_SIZE = 16;
+
+    private final Map map;
+    private WritableImage[][] chunks;
+    private boolean[][] dirtyChunks;
+    private int chunksWide;
+    private int chunksHigh;
+
+    /**
+     * Default Constructor will create an empty cache for the provided map, no chunks are built until drawn.
+     * @param map the map whose terrain will be cached
+     */
+    public MapChunkCache(Map map) {
+        this.map = map;
+        invalidateAll();
+    }
+
+    /**
+     * Will draw the terrain of the view area to the graphics context using the cached chunk images.
+     * Tiles of the view area that fall outside of the map are drawn with the blank tile of the first tileset.
+     * @param gc the graphics context to draw onto
+     * @param anchorUL the XY of the map tile that is in the upper left of the view area
+     * @param mapAreaXY the [width, height] in tiles of the view area
+     */
+    public void draw(GraphicsContext gc, int[] anchorUL, int[] mapAreaXY) {
+        if(chunksWide * CHUNK_SIZE < map.getMapWidth() || chunksHigh * CHUNK_SIZE < map.getMapHeight()) {
+            // map was resized or reloaded without an explicit invalidation
+            invalidateAll();
+        }
+        int firstChunkX = Math.max(anchorUL[0], 0) / CHUNK_SIZE;
+        int firstChunkY = Math.max(anchorUL[1], 0) / CHUNK_SIZE;
+        int lastChunkX = Math.min((anchorUL[0] + mapAreaXY[0] - 1) / CHUNK_SIZE, chunksWide - 1);
+        int lastChunkY = Math.min((anchorUL[1] + mapAreaXY[1] - 1) / CHUNK_SIZE, chunksHigh - 1);
+        int chunkPixels = CHUNK_SIZE * Run.TILE_SIZE;
+        for(int chunkY = firstChunkY; chunkY <= lastChunkY; chunkY++) {
+            for(int chunkX = firstChunkX; chunkX <= lastChunkX; chunkX++) {
+                gc.drawImage(getChunk(chunkX, chunkY),
+                        ((chunkX * CHUNK_SIZE) - anchorUL[0]) * Run.TILE_SIZE,
+                        ((chunkY * CHUNK_SIZE) - anchorUL[1]) * Run.TILE_SIZE,
+                        chunkPixels, chunkPixels
+                );
+            }
+        }
+        // fill any part of the view area that is beyond the edges of the map
+        for(int y = 0; y < mapAreaXY[1]; y++) {
+            for(int x = 0; x < mapAreaXY[0]; x++) {
+                int mapX = x + anchorUL[0];
+                int mapY = y + anchorUL[1];
+                if(mapX < 0 || mapY < 0 || mapX >= map.getMapWidth() || mapY >= map.getMapHeight()) {
+                    map.getTileSet(0).drawBlank(gc, x * Run.TILE_SIZE, y * Run.TILE_SIZE, Run.TILE_SIZE, Run.TILE_SIZE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Will draw the terrain of a single tile of the view area from its cached chunk, used to repaint dirty tiles.
+     * @param gc the graphics context to draw onto
+     * @param anchorUL the XY of the map tile that is in the upper left of the view area
+     * @param screenX the x location in tiles of the view area to repaint
+     * @param screenY the y location in tiles of the view area to repaint
+     */
+    public void drawTile(GraphicsContext gc, int[] anchorUL, int screenX, int screenY) {
+        int mapX = screenX + anchorUL[0];
+        int mapY = screenY + anchorUL[1];
+        if(mapX < 0 || mapY < 0 || mapX >= map.getMapWidth() || mapY >= map.getMapHeight()) {
+            map.getTileSet(0).drawBlank(gc, screenX * Run.TILE_SIZE, screenY * Run.TILE_SIZE,
+                    Run.TILE_SIZE, Run.TILE_SIZE
+            );
+        } else {
+            int tileSize = map.getTileSize();
+            gc.drawImage(getChunk(mapX / CHUNK_SIZE, mapY / CHUNK_SIZE),
+                    (mapX % CHUNK_SIZE) * tileSize, (mapY % CHUNK_SIZE) * tileSize, tileSize, tileSize,
+                    screenX * Run.TILE_SIZE, screenY * Run.TILE_SIZE, Run.TILE_SIZE, Run.TILE_SIZE
+            );
+        }
+    }
+
+    /**
+     * Returns the chunk image at chunkX, chunkY building it first if it is missing or has been invalidated.
+     * @param chunkX the x index of the chunk
+     * @param chunkY the y index of the chunk
+     * @return the pre-rendered image of the chunk
+     */
+    private WritableImage getChunk(int chunkX, int chunkY) {
+        if(chunks[chunkY][chunkX] == null || dirtyChunks[chunkY][chunkX]) {
+            chunks[chunkY][chunkX] = buildChunk(chunkX, chunkY, chunks[chunkY][chunkX]);
+            dirtyChunks[chunkY][chunkX] = false;
+        }
+        return chunks[chunkY][chunkX];
+    }
+
+    /**
+     * Copies the pixels of every tile in the chunk into a single image, reusing the previous image when possible.
+     * Tiles beyond the edge of the map are left transparent.
+     * @param chunkX the x index of the chunk
+     * @param chunkY the y index of the chunk
+     * @param reuse the previous image of this chunk or null
+     * @return the image containing all the tiles of the chunk
+     */
+    private WritableImage buildChunk(int chunkX, int chunkY, WritableImage reuse) {
+        int tileSize = map.getTileSize();
+        int chunkPixels = CHUNK_SIZE * tileSize;
+        WritableImage chunk = reuse;
+        if(chunk == null || (int) chunk.getWidth() != chunkPixels) {
+            chunk = new WritableImage(chunkPixels, chunkPixels);
+        }
+        PixelWriter pw = chunk.getPixelWriter();
+        for(int y = 0; y < CHUNK_SIZE; y++) {
+            int mapY = (chunkY * CHUNK_SIZE) + y;
+            if(mapY >= map.getMapHeight()) {
+                break;
+            }
+            for(int x = 0; x < CHUNK_SIZE; x++) {
+                int mapX = (chunkX * CHUNK_SIZE) + x;
+                if(mapX >= map.getMapWidth()) {
+                    break;
+                }
+                map.writeTile(pw, map.getTileSetID(mapX, mapY), map.getTileID(mapX, mapY),
+                        x * tileSize, y * tileSize
+                );
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Marks the chunk containing the map tile at x,y as needing to be rebuilt.
+     * @param x the x location of the edited tile
+     * @param y the y location of the edited tile
+     */
+    public void invalidateTile(int x, int y) { invalidateRegion(x, y, x, y); }
+
+    /**
+     * Marks every chunk overlapping the rectangle of map tiles between the two corners as needing to be rebuilt.
+     * The corners can be provided in any order.
+     * @param x1 the x location of the first corner
+     * @param y1 the y location of the first corner
+     * @param x2 the x location of the second corner
+     * @param y2 the y location of the second corner
+     */
+    public void invalidateRegion(int x1, int y1, int x2, int y2) {
+        int firstChunkX = Math.max(Math.min(x1, x2), 0) / CHUNK_SIZE;
+        int firstChunkY = Math.max(Math.min(y1, y2), 0) / CHUNK_SIZE;
+        int lastChunkX = Math.min(Math.max(x1, x2) / CHUNK_SIZE, chunksWide - 1);
+        int lastChunkY = Math.min(Math.max(y1, y2) / CHUNK_SIZE, chunksHigh - 1);
+        for(int chunkY = firstChunkY; chunkY <= lastChunkY; chunkY++) {
+            for(int chunkX = firstChunkX; chunkX <= lastChunkX; chunkX++) {
+                dirtyChunks[chunkY][chunkX] = true;
+            }
+        }
+        RenderUtil.requestRedraw();
+    }
+
+    /**
+     * Drops the image of the chunk at chunkX, chunkY so its memory can be reclaimed, it is rebuilt if drawn again.
+     * Used by the MapChunkStreamer when the tiles of the chunk are no longer resident.
+     * @param chunkX the x index of the chunk
+     * @param chunkY the y index of the chunk
+     */
+    public void releaseChunk(int chunkX, int chunkY) {
+        if(chunkX < chunksWide && chunkY < chunksHigh) {
+            chunks[chunkY][chunkX] = null;
+        }
+    }
+
+    /**
+     * Drops every chunk so the whole map is rebuilt on the next draw, used when the map data is (re)loaded.
+     */
+    public void invalidateAll() {
+        chunksWide = (map.getMapWidth() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksHigh = (map.getMapHeight() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new WritableImage[chunksHigh][chunksWide];
+        dirtyChunks = new boolean[chunksHigh][chunksWide];
+        RenderUtil.requestRedraw();
+    }
+
+}
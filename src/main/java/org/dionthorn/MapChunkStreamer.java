@@ -0,0 +1,354 @@
+package org.dionthorn;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * The MapChunkStreamer serves the tiles of a Map straight from its .bin file so maps far larger than the heap can
+ * be played. Tiles are read in square chunks of MapChunkCache.CHUNK_SIZE * MapChunkCache.CHUNK_SIZE,
+ * only a bounded number of chunks are kept resident in a least recently used order and the rest are read again from
+ * the .bin file when next needed. Chunks around the view area and around active entities are prefetched on a
+ * background thread, reaching one chunk further in the direction the view is moving.
+ * Edited chunks are pinned in memory until they are written back to the .bin file by flush, which only writes the
+ * rows of the edited chunks in place so saving costs the size of the edits rather than of the map.
+ */
+public class MapChunkStreamer {
+
+    // tile count at or above which a map with a current .bin file is streamed, 0 or less never streams
+    public static int streamThresholdTiles = 1024 * 1024;
+    // the amount of clean chunks kept resident before the least recently used ones are dropped
+    public static int maxResidentChunks = 64;
+    private static final int CHUNK_SIZE = MapChunkCache.CHUNK_SIZE;
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MapChunkStreamer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A resident chunk holds the packed tiles of its area, see MapTile for the layout of each int.
+     */
+    private static class Chunk {
+        private final int[] tiles = new int[CHUNK_SIZE * CHUNK_SIZE];
+        private boolean dirty;
+    }
+
+    private final Map map;
+    private final URI binaryFile;
+    private final long bodyOffset;
+    private final int mapWidth;
+    private final int mapHeight;
+    private final int chunksWide;
+    private final int chunksHigh;
+    // access ordered so iteration starts at the least recently used chunk
+    private final LinkedHashMap<Integer, Chunk> residentChunks = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashSet<Integer> pendingChunks = new HashSet<>();
+    private final ArrayList<Integer> evictedChunks = new ArrayList<>();
+    private int lastAnchorX;
+    private int lastAnchorY;
+    private int moveX;
+    private int moveY;
+
+    /**
+     * Default Constructor will stream the tiles of map from the body of its .bin file.
+     * See Map.saveBinaryMapData for the layout of the body.
+     * @param map the map whose tiles are streamed
+     * @param binaryFile the .bin file of the map, chunks are read from and written back to it
+     * @param bodyOffset the byte offset of the first tile within the .bin file
+     */
+    public MapChunkStreamer(Map map, URI binaryFile, long bodyOffset) {
+        this.map = map;
+        this.binaryFile = binaryFile;
+        this.bodyOffset = bodyOffset;
+        mapWidth = map.getMapWidth();
+        mapHeight = map.getMapHeight();
+        chunksWide = (mapWidth + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksHigh = (mapHeight + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Returns true if a map of width * height tiles should be streamed rather than loaded whole.
+     * @param width the width in tiles of the map
+     * @param height the height in tiles of the map
+     * @return true if the map is large enough to stream
+     */
+    public static boolean shouldStream(int width, int height) {
+        return streamThresholdTiles > 0 && (long) width * height >= streamThresholdTiles;
+    }
+
+    /**
+     * Returns the journal flush writes edited chunks to before writing them into the .bin file.
+     * @param binaryFile the .bin file of a map
+     * @return the journal file of the .bin file
+     */
+    public static URI getJournalFile(URI binaryFile) { return URI.create(binaryFile + ".journal"); }
+
+    /**
+     * Returns the packed tile located at x,y, reading its chunk from the .bin file first if it isn't resident.
+     * @param x the target x location
+     * @param y the target y location
+     * @return the packed tile, see MapTile
+     */
+    public synchronized int getTile(int x, int y) {
+        return getChunk(x / CHUNK_SIZE, y / CHUNK_SIZE).tiles[((y % CHUNK_SIZE) * CHUNK_SIZE) + (x % CHUNK_SIZE)];
+    }
+
+    /**
+     * Will set the packed tile located at x,y, its chunk stays resident until the next flush.
+     * @param x the target x location
+     * @param y the target y location
+     * @param tile the packed tile, see MapTile
+     */
+    public synchronized void setTile(int x, int y, int tile) {
+        Chunk chunk = getChunk(x / CHUNK_SIZE, y / CHUNK_SIZE);
+        chunk.tiles[((y % CHUNK_SIZE) * CHUNK_SIZE) + (x % CHUNK_SIZE)] = tile;
+        chunk.dirty = true;
+    }
+
+    /**
+     * Will keep the chunks of the view area resident and prefetch the chunks one beyond it in the direction the
+     * view last moved. Should be called from the JavaFX thread before the view area is drawn, chunk images of
+     * chunks dropped since the last call are released from the Maps MapChunkCache here.
+     * @param anchorUL the XY of the map tile that is in the upper left of the view area
+     * @param mapAreaXY the [width, height] in tiles of the view area
+     */
+    public void retainView(int[] anchorUL, int[] mapAreaXY) {
+        releaseEvicted();
+        int deltaX = Integer.signum(anchorUL[0] - lastAnchorX);
+        int deltaY = Integer.signum(anchorUL[1] - lastAnchorY);
+        if(deltaX != 0 || deltaY != 0) {
+            moveX = deltaX;
+            moveY = deltaY;
+        }
+        lastAnchorX = anchorUL[0];
+        lastAnchorY = anchorUL[1];
+        prefetchRegion(
+                Math.floorDiv(anchorUL[0], CHUNK_SIZE) + Math.min(moveX, 0),
+                Math.floorDiv(anchorUL[1], CHUNK_SIZE) + Math.min(moveY, 0),
+                Math.floorDiv(anchorUL[0] + mapAreaXY[0] - 1, CHUNK_SIZE) + Math.max(moveX, 0),
+                Math.floorDiv(anchorUL[1] + mapAreaXY[1] - 1, CHUNK_SIZE) + Math.max(moveY, 0)
+        );
+    }
+
+    /**
+     * Will keep the chunks under the tiles around x,y resident, prefetching any that aren't.
+     * Used for entities so the tiles they can move onto are ready before they are checked.
+     * @param x the x location of the entity
+     * @param y the y location of the entity
+     */
+    public void retainArea(int x, int y) {
+        prefetchRegion(Math.floorDiv(x - 1, CHUNK_SIZE), Math.floorDiv(y - 1, CHUNK_SIZE),
+                Math.floorDiv(x + 1, CHUNK_SIZE), Math.floorDiv(y + 1, CHUNK_SIZE)
+        );
+    }
+
+    /**
+     * Will write every edited chunk back into the .bin file in place, one region per row of each chunk.
+     * The regions go through the journal of the .bin file first so a write cut short is finished on the next load,
+     * see FileOpUtils.writeFileRegions and getJournalFile. Written chunks are no longer pinned and can be dropped
+     * again, chunks that failed to write stay pinned until the next flush.
+     * @return true if there was nothing to write or every edited chunk was written
+     */
+    public synchronized boolean flush() {
+        ArrayList<Long> positions = new ArrayList<>();
+        ArrayList<ByteBuffer> regions = new ArrayList<>();
+        ArrayList<Chunk> written = new ArrayList<>();
+        for(java.util.Map.Entry<Integer, Chunk> entry: residentChunks.entrySet()) {
+            Chunk chunk = entry.getValue();
+            if(!chunk.dirty) {
+                continue;
+            }
+            int chunkX = entry.getKey() % chunksWide;
+            int chunkY = entry.getKey() / chunksWide;
+            int rowLength = Math.min(CHUNK_SIZE, mapWidth - (chunkX * CHUNK_SIZE));
+            int rows = Math.min(CHUNK_SIZE, mapHeight - (chunkY * CHUNK_SIZE));
+            for(int y = 0; y < rows; y++) {
+                ByteBuffer row = ByteBuffer.allocate(rowLength * Map.BINARY_TILE_BYTES);
+                for(int x = 0; x < rowLength; x++) {
+                    int tile = chunk.tiles[(y * CHUNK_SIZE) + x];
+                    row.putShort((short) MapTile.getTileSet(tile)).putShort((short) MapTile.getTileID(tile));
+                }
+                positions.add(getRowPosition(chunkX, (chunkY * CHUNK_SIZE) + y));
+                regions.add(row.flip());
+            }
+            written.add(chunk);
+        }
+        boolean success = true;
+        if(!written.isEmpty()) {
+            long[] offsets = new long[positions.size()];
+            for(int step = 0; step < offsets.length; step++) {
+                offsets[step] = positions.get(step);
+            }
+            success = FileOpUtils.writeFileRegions(binaryFile, getJournalFile(binaryFile), offsets,
+                    regions.toArray(new ByteBuffer[0])
+            );
+            if(success) {
+                for(Chunk chunk: written) {
+                    chunk.dirty = false;
+                }
+                Run.programLogger.log(Level.INFO, String.format("Wrote %d edited chunks to %s", written.size(),
+                        binaryFile.getPath())
+                );
+            } else {
+                Run.programLogger.log(Level.WARNING, String.format("Could not write %d edited chunks to %s",
+                        written.size(), binaryFile.getPath())
+                );
+            }
+        }
+        trimResident();
+        return success;
+    }
+
+    /**
+     * Returns true if any chunk has been edited since the last flush.
+     * @return true if there are unsaved edits
+     */
+    public synchronized boolean isDirty() {
+        for(Chunk chunk: residentChunks.values()) {
+            if(chunk.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the amount of chunks currently held in memory.
+     * @return the resident chunk count
+     */
+    public synchronized int getResidentChunkCount() { return residentChunks.size(); }
+
+    /**
+     * Returns the resident chunk at chunkX, chunkY reading it from the .bin file first if needed.
+     * Must be called while holding the lock of this streamer.
+     * @param chunkX the x index of the chunk
+     * @param chunkY the y index of the chunk
+     * @return the resident chunk
+     */
+    private Chunk getChunk(int chunkX, int chunkY) {
+        int key = (chunkY * chunksWide) + chunkX;
+        Chunk chunk = residentChunks.get(key);
+        if(chunk == null) {
+            chunk = readChunk(chunkX, chunkY);
+            residentChunks.put(key, chunk);
+            trimResident();
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads the tiles of the chunk at chunkX, chunkY from the .bin file one row of the chunk at a time, only
+     * positional reads are used so chunks can be read from the prefetch thread. Tiles beyond the edge of the map,
+     * or of a .bin file that can't be read, are left as 0.
+     * @param chunkX the x index of the chunk
+     * @param chunkY the y index of the chunk
+     * @return the newly read chunk
+     */
+    private Chunk readChunk(int chunkX, int chunkY) {
+        Chunk chunk = new Chunk();
+        int rowLength = Math.min(CHUNK_SIZE, mapWidth - (chunkX * CHUNK_SIZE));
+        int rows = Math.min(CHUNK_SIZE, mapHeight - (chunkY * CHUNK_SIZE));
+        long[] positions = new long[rows];
+        ByteBuffer[] data = new ByteBuffer[rows];
+        for(int y = 0; y < rows; y++) {
+            positions[y] = getRowPosition(chunkX, (chunkY * CHUNK_SIZE) + y);
+            data[y] = ByteBuffer.allocate(rowLength * Map.BINARY_TILE_BYTES);
+        }
+        if(!FileOpUtils.readFileRegions(binaryFile, positions, data)) {
+            Run.programLogger.log(Level.WARNING, String.format("Could not read chunk %d,%d of %s", chunkX, chunkY,
+                    binaryFile.getPath())
+            );
+            return chunk;
+        }
+        for(int y = 0; y < rows; y++) {
+            for(int x = 0; x < rowLength; x++) {
+                chunk.tiles[(y * CHUNK_SIZE) + x] = MapTile.pack(data[y].getShort() & MapTile.MAX_TILE_SET,
+                        data[y].getShort() & MapTile.MAX_TILE_ID
+                );
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the byte offset within the .bin file of the first tile of chunkX on row y of the map.
+     * @param chunkX the x index of the chunk
+     * @param y the row of the map
+     * @return the byte offset of the tile
+     */
+    private long getRowPosition(int chunkX, int y) {
+        return bodyOffset + ((((long) y * mapWidth) + ((long) chunkX * CHUNK_SIZE)) * Map.BINARY_TILE_BYTES);
+    }
+
+    /**
+     * Will mark the chunks of the region as recently used and queue any that aren't resident to be read on the
+     * prefetch thread. Chunk indexes outside of the map are skipped.
+     * @param firstChunkX the x index of the first chunk
+     * @param firstChunkY the y index of the first chunk
+     * @param lastChunkX the x index of the last chunk inclusive
+     * @param lastChunkY the y index of the last chunk inclusive
+     */
+    private synchronized void prefetchRegion(int firstChunkX, int firstChunkY, int lastChunkX, int lastChunkY) {
+        for(int chunkY = Math.max(firstChunkY, 0); chunkY <= Math.min(lastChunkY, chunksHigh - 1); chunkY++) {
+            for(int chunkX = Math.max(firstChunkX, 0); chunkX <= Math.min(lastChunkX, chunksWide - 1); chunkX++) {
+                int key = (chunkY * chunksWide) + chunkX;
+                if(residentChunks.get(key) == null && pendingChunks.add(key)) {
+                    int readX = chunkX;
+                    int readY = chunkY;
+                    prefetchExecutor.execute(() -> {
+                        Chunk chunk = readChunk(readX, readY);
+                        synchronized(this) {
+                            pendingChunks.remove(key);
+                            // a chunk read on demand meanwhile may already hold edits, keep it
+                            if(residentChunks.putIfAbsent(key, chunk) == null) {
+                                trimResident();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used clean chunks until at most maxResidentChunks are resident, edited chunks are
+     * never dropped. Must be called while holding the lock of this streamer.
+     */
+    private void trimResident() {
+        Iterator<java.util.Map.Entry<Integer, Chunk>> iterator = residentChunks.entrySet().iterator();
+        int excess = residentChunks.size() - Math.max(maxResidentChunks, 1);
+        while(excess > 0 && iterator.hasNext()) {
+            java.util.Map.Entry<Integer, Chunk> entry = iterator.next();
+            if(!entry.getValue().dirty) {
+                iterator.remove();
+                evictedChunks.add(entry.getKey());
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Releases the chunk images of every chunk dropped since the last call from the Maps MapChunkCache.
+     */
+    private void releaseEvicted() {
+        int[] released;
+        synchronized(this) {
+            released = new int[evictedChunks.size()];
+            for(int step = 0; step < released.length; step++) {
+                released[step] = evictedChunks.get(step);
+            }
+            evictedChunks.clear();
+        }
+        for(int key: released) {
+            map.getChunkCache().releaseChunk(key % chunksWide, key / chunksWide);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.dionthorn;
+
+import javafx.application.Platform;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * The MapLoader fully loads a list of catalogued maps concurrently on a pool of worker threads, one per core.
+ * Parsing the map files and slicing their tilesets happens on the workers, progress and completion are handed
+ * back to the JavaFX application thread through Platform.runLater so the window keeps painting the
+ * GameState.STATE.LOADING screen meanwhile.
+ */
+public class MapLoader {
+
+    private static final ExecutorService workerPool = Executors.newFixedThreadPool(
+            Math.max(Runtime.getRuntime().availableProcessors(), 1), runnable -> {
+                Thread thread = new Thread(runnable, "MapLoader");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+    private static final AtomicInteger loadedMaps = new AtomicInteger();
+    private static volatile int totalMaps;
+
+    /**
+     * Will load every map of maps that isn't loaded yet on the worker pool then run onComplete on the JavaFX
+     * application thread. A map that fails to load is logged and counted as done so loading always completes.
+     * Must be called from the JavaFX application thread.
+     * @param maps the maps to load
+     * @param onComplete run on the JavaFX application thread once every map has loaded
+     */
+    public static void loadAll(List<Map> maps, Runnable onComplete) {
+        ArrayList<Map> toLoad = new ArrayList<>();
+        for(Map map: maps) {
+            if(!map.isLoaded()) {
+                toLoad.add(map);
+            }
+        }
+        loadedMaps.set(0);
+        totalMaps = toLoad.size();
+        if(toLoad.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+        long startTime = System.nanoTime();
+        int total = toLoad.size();
+        for(Map map: toLoad) {
+            workerPool.execute(() -> {
+                try {
+                    map.ensureLoaded();
+                } catch (Exception e) {
+                    Run.programLogger.log(Level.WARNING, "Failed to load map: " + map.getPATH());
+                    e.printStackTrace();
+                }
+                int done = loadedMaps.incrementAndGet();
+                Platform.runLater(() -> {
+                    RenderUtil.requestRedraw();
+                    if(done == total) {
+                        Run.programLogger.log(Level.INFO, String.format("Loaded %d maps on %d threads in %d ms",
+                                total, Runtime.getRuntime().availableProcessors(),
+                                (System.nanoTime() - startTime) / 1000000)
+                        );
+                        onComplete.run();
+                    }
+                });
+            });
+        }
+    }
+
+    /**
+     * Returns the amount of maps of the current loadAll call that have finished loading.
+     * @return the loaded map count
+     */
+    public static int getLoadedMaps() { return loadedMaps.get(); }
+
+    /**
+     * Returns the amount of maps the current loadAll call is loading.
+     * @return the total map count
+     */
+    public static int getTotalMaps() { return totalMaps; }
+
+}
@@ -1,68 +1,61 @@
 package org.dionthorn;
 
 /**
- * The MapTile class will be used to track individual tile attributes
+ * The MapTile class defines how a single map tile is packed into one int inside a Map.
+ * Bits 0-15 hold the tileID within its tileSet and bits 16-23 the tileSet index,
+ * so a whole map is a single row major int[] instead of one object per tile.
+ * TileTypes are not packed with the tile, a Map keeps one bit layer per TileType instead.
  */
 public class MapTile {
 
     /**
-     * Enumerator to track TileType
-     * Fire will cause entities to take damage
+     * Enumerator to track TileType, a tile can be tagged with any number of types other than DEFAULT.
      * Impassable prevents entities from occupying the location
+     * Fire will cause entities to take damage
+     * Water and Cover are available for map meta data and queries
+     * The declared order is the precedence used when a single type is needed for a tile.
      */
-    public enum TileType { DEFAULT, IMPASSABLE, FIRE }
+    public enum TileType { DEFAULT, IMPASSABLE, FIRE, WATER, COVER }
 
-    private int tileSet;
-    private int tileID;
-    private TileType type;
+    public static final int MAX_TILE_ID = 0xFFFF;
+    public static final int MAX_TILE_SET = 0xFF;
+    private static final int TILE_SET_SHIFT = 16;
 
     /**
-     * Default Constructor for a MapTile assigns its tileSet id and TileID within the set.
-     * type is set to DEFAULT but can be tagged post initialization.
+     * Returns the packed form of a tile.
      * @param set the integer index of the associated tileSet
      * @param id the integer index of the associated tileID within the tileSet
+     * @return the packed tile
      */
-    public MapTile(int set, int id) {
-        tileSet = set;
-        tileID = id;
-        type = TileType.DEFAULT;
+    public static int pack(int set, int id) {
+        return (id & MAX_TILE_ID) | ((set & MAX_TILE_SET) << TILE_SET_SHIFT);
     }
 
     /**
-     * Tags this MapTile as being of the type newType
-     * @param newType tags this tile as being of the type provided by newType
+     * Returns the integer index of the packed tiles associated tileSet
+     * @param tile the packed tile
+     * @return the integer index of the tiles associated tileSet
      */
-    public void tagTileType(TileType newType) { type = newType; }
+    public static int getTileSet(int tile) { return (tile >>> TILE_SET_SHIFT) & MAX_TILE_SET; }
 
     /**
-     * Returns the integer index of this MapTiles associated tileSet
-     * @return the integer index of this MapTiles associated tileSet
+     * Returns the packed tiles associated tileID index as an integer
+     * @param tile the packed tile
+     * @return an integer representing the tileID of its associated tileSet
      */
-    public int getTileSet() { return tileSet; }
+    public static int getTileID(int tile) { return tile & MAX_TILE_ID; }
 
     /**
-     * Returns this MapTiles associated TileType
-     * @return the TileType of this MapTile
+     * Returns the flag bit used for type in TileType flag bytes, DEFAULT has no bit. The flags are the per tile
+     * lookup table of a TileSet, see TileSet.getTypeFlags, which a Map expands into its TileType bit layers.
+     * @param type the tile type
+     * @return the flag bit of the type
      */
-    public TileType getType() { return type; }
-
-    /**
-     * Returns this MapTiles associated tileID index as an integer
-     * @return an integer representing this MapTiles tileID of its associated tileSet
-     */
-    public int getTileID() { return tileID; }
-
-    /**
-     * sets tileID of this MapTile
-     * @param id an integer for the index of the tileID associated to this MapTile
-     */
-    public void setTileID(int id) { tileID = id; }
-
-    /**
-     * Sets the associated tileSet of this MapTile
-     * @param set an integer for the index of the tileSet associated to this MapTile
-     */
-    public void setTileSet(int set) { tileSet = set; }
+    public static int typeFlag(TileType type) {
+        if(type == TileType.DEFAULT) {
+            return 0;
+        }
+        return 1 << (type.ordinal() - 1);
+    }
 
 }
-
@@ -113,35 +113,19 @@ public class NonPlayerCharacter extends Character {
      */
     @Override
     public void draw(GraphicsContext gc) {
-        gc.drawImage(getCurrentSprite(), getRelativeX() * tileSize, getRelativeY() * tileSize, tileSize, tileSize);
+        drawSprite(gc, getRelativeX() * tileSize, getRelativeY() * tileSize, tileSize);
     }
 
     public void move(GameState gameState) {
-        boolean playerTeamCheck = false;
-        for(Entity e: gameState.getPlayerTeam()) {
-            if (e.equals(this)) {
-                playerTeamCheck = true;
-                break;
-            }
-        }
+        // an ally hunts the enemy team and everyone else hunts the player team
+        Team targetTeam = team == Team.PLAYER ? Team.ENEMY : Team.PLAYER;
         boolean onSameY = false;
         boolean posX = false;
-        if(playerTeamCheck) {
-            for(Entity e: gameState.getEnemyTeam()) {
-                if(((PhysicalEntity) e).getY() == this.getY() && ((Character) e).isAlive()) {
-                    onSameY = true;
-                    if(((PhysicalEntity) e).getX() > this.getX()) {
-                        posX = true;
-                    }
-                }
-            }
-        } else {
-            for(Entity e: gameState.getPlayerTeam()) {
-                if(((PhysicalEntity) e).getY() == this.getY() && ((Character) e).isAlive()) {
-                    onSameY = true;
-                    if (((PhysicalEntity) e).getX() > this.getX()) {
-                        posX = true;
-                    }
+        for(Character c: gameState.getPartition(currentMap).getLivingCharacters()) {
+            if(c.getTeam() == targetTeam && c.getY() == this.getY()) {
+                onSameY = true;
+                if(c.getX() > this.getX()) {
+                    posX = true;
                 }
             }
         }
@@ -195,30 +179,17 @@ public class NonPlayerCharacter extends Character {
                 Run.programLogger.log(Level.WARNING, "No AI movement solution found over 10 random tries");
                 collisionCounter = 0;
             }
-            if(gameState.getPlayerTeam().contains(this)) {
-                boolean found = false;
-                for(Entity e: gameState.getPlayerTeam()) {
-                    if(e.getUID() == getUID()) {
-                        found = true;
-                    } else if(found) {
-                        ((Character) e).setMoveTurn(true);
-                        found = false;
-                    }
-                }
-                if(found) {
+            // pass the turn to the next member of this team, or to the first of the other team after the last
+            if(team == Team.PLAYER) {
+                if(teamIndex + 1 < gameState.getPlayerTeam().size()) {
+                    ((Character) gameState.getPlayerTeam().get(teamIndex + 1)).setMoveTurn(true);
+                } else {
                     ((Character) gameState.getEnemyTeam().get(0)).setMoveTurn(true);
                 }
-            } else if(gameState.getEnemyTeam().contains(this)) {
-                boolean found = false;
-                for(Entity e: gameState.getEnemyTeam()) {
-                    if(e.getUID() == getUID()) {
-                        found = true;
-                    } else if(found) {
-                        ((Character) e).setMoveTurn(true);
-                        found = false;
-                    }
-                }
-                if(found) {
+            } else if(team == Team.ENEMY) {
+                if(teamIndex + 1 < gameState.getEnemyTeam().size()) {
+                    ((Character) gameState.getEnemyTeam().get(teamIndex + 1)).setMoveTurn(true);
+                } else {
                     ((Character) gameState.getPlayerTeam().get(0)).setMoveTurn(true);
                 }
             }
@@ -19,6 +19,7 @@ public abstract class PhysicalEntity extends Entity {
         currentMap = map;
         this.x = x;
         this.y = y;
+        occupy();
     }
 
     /**
@@ -68,13 +69,27 @@ public abstract class PhysicalEntity extends Entity {
      * Assigns this entity a new x location.
      * @param newX Assigns this entity a new x location
      */
-    protected void setX(int newX) { x = newX; }
+    protected void setX(int newX) {
+        if(x != newX) {
+            RenderUtil.requestOverlayRedraw();
+        }
+        vacate();
+        x = newX;
+        occupy();
+    }
 
     /**
      * Assigns this entity a new y location.
      * @param newY Assigns this entity a new y location
      */
-    protected void setY(int newY) { y = newY; }
+    protected void setY(int newY) {
+        if(y != newY) {
+            RenderUtil.requestOverlayRedraw();
+        }
+        vacate();
+        y = newY;
+        occupy();
+    }
 
     /**
      * Returns the Map associated with this entity.
@@ -89,9 +104,30 @@ public abstract class PhysicalEntity extends Entity {
      * @param y the y location the entity should be on for the new map
      */
     protected void setCurrentMap(Map newMap, int x, int y) {
+        vacate();
         currentMap = newMap;
         this.x = x;
         this.y = y;
+        occupy();
+        RenderUtil.requestRedraw();
+    }
+
+    /**
+     * Places this entity on the occupancy grid of its Map at its x,y location, see Map.getOccupants.
+     */
+    private void occupy() {
+        if(currentMap != null) {
+            currentMap.addOccupant(this);
+        }
+    }
+
+    /**
+     * Removes this entity from the occupancy grid of its Map, other entities on the same tile are left alone.
+     */
+    private void vacate() {
+        if(currentMap != null) {
+            currentMap.removeOccupant(this);
+        }
     }
 
 }
@@ -23,7 +23,7 @@ public class Player extends Character {
      */
     @Override
     public void draw(GraphicsContext gc) {
-        gc.drawImage(getCurrentSprite(), getRelativeX() * tileSize, getRelativeY() * tileSize, tileSize, tileSize);
+        drawSprite(gc, getRelativeX() * tileSize, getRelativeY() * tileSize, tileSize);
     }
 
     /**
@@ -9,6 +9,8 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
 import java.net.URI;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 public class RenderUtil {
 
@@ -21,13 +23,36 @@ public class RenderUtil {
     private static final Font smallFont = new Font("Arial", 12);
     private static final Font mediumFont = new Font("Arial", 28);
     private static final Font largeFont = new Font("Arial", 32);
+    public static boolean eventDrivenRendering = true; // when false every frame is repainted
+    private static boolean redrawRequested = true;
+    private static long skippedFrames = 0;
+    private static boolean fullRedrawRequested = true;
+    private static Map lastDrawnMap;
+    private static int[] lastDrawnMapArea = new int[2];
+    private static LinkedHashMap<Entity, OverlayRect> drawnOverlays = new LinkedHashMap<>();
 
+    /**
+     * Will repaint the canvas based on the current state of the game.
+     * When eventDrivenRendering is enabled the frame is skipped unless a redraw has been requested since the last
+     * repaint, or the current state is animating on its own such as the battle screen.
+     * @param app the main game application
+     * @param devMenu the dev menu if it has been opened otherwise null
+     * @param gc the graphics context of the main canvas
+     */
     public static void render(Run app, DevMenu devMenu, GraphicsContext gc) {
+        if(eventDrivenRendering && !redrawRequested && !isAnimating(app)) {
+            skippedFrames++;
+            return;
+        }
+        redrawRequested = false;
+        if(app.getGameState() == null || app.getGameState().getCurrentState() != GameState.STATE.GAME) {
+            // any other screen paints over the whole canvas so the game screen must be fully repainted next time
+            fullRedrawRequested = true;
+        }
         if (app.getGameState() != null && devMenu != null) {
-            Image selectedTileImg = app.getGameState().getCurrentMap().getTile(devMenu.SELECTED_TILE_SET_ID,
-                    devMenu.SELECTED_TILE_ID
+            ImageView selectedTileImgView = app.getGameState().getCurrentMap().makeTileView(
+                    devMenu.SELECTED_TILE_SET_ID, devMenu.SELECTED_TILE_ID
             );
-            ImageView selectedTileImgView = new ImageView(selectedTileImg);
             devMenu.getDevMenu().getChildren().add(selectedTileImgView);
             GridPane.setConstraints(selectedTileImgView, 3, 9);
             devMenu.getDevMenu().getChildren().remove(devMenu.getTileSetView());
@@ -53,9 +78,30 @@ public class RenderUtil {
             drawExitToMain(gc);
         } else if(app.getGameState() != null && app.getGameState().getCurrentState() == GameState.STATE.SETTINGS) {
             drawSettingsScreen(gc);
+        } else if(app.getGameState() != null && app.getGameState().getCurrentState() == GameState.STATE.LOADING) {
+            drawLoadingScreen(gc);
         }
     }
 
+    public static void drawLoadingScreen(GraphicsContext gc) {
+        gc.clearRect(0, 0, Run.SCREEN_WIDTH, Run.SCREEN_HEIGHT);
+        gc.drawImage(mainMenuBg, 0, 0, Run.SCREEN_WIDTH, Run.SCREEN_HEIGHT);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setFont(mediumFont);
+        gc.setFill(Color.WHITE);
+        int loaded = MapLoader.getLoadedMaps();
+        int total = Math.max(MapLoader.getTotalMaps(), 1);
+        gc.fillText(String.format("Loading Maps %d / %d", loaded, MapLoader.getTotalMaps()),
+                Run.SCREEN_WIDTH >> 1, (Run.SCREEN_HEIGHT >> 4) * 4
+        );
+        int barWidth = Run.SCREEN_WIDTH >> 1;
+        int barX = Run.SCREEN_WIDTH >> 2;
+        int barY = (Run.SCREEN_HEIGHT >> 4) * 5;
+        gc.setStroke(Color.WHITE);
+        gc.strokeRect(barX, barY, barWidth, Run.TILE_SIZE);
+        gc.fillRect(barX, barY, ((double) barWidth * loaded) / total, Run.TILE_SIZE);
+    }
+
     public static void drawMainMenu(GraphicsContext gc) {
         gc.clearRect(0, 0, Run.SCREEN_WIDTH, Run.SCREEN_HEIGHT);
         gc.drawImage(mainMenuBg, 0, 0, Run.SCREEN_WIDTH, Run.SCREEN_HEIGHT);
@@ -114,96 +160,97 @@ public class RenderUtil {
     }
 
     public static void drawGameScreen(Run app, GraphicsContext gc) {
-        gc.clearRect(0, 0, Run.SCREEN_WIDTH, Run.SCREEN_HEIGHT); // Clear canvas
-        MapTile[][] mapTiles = app.getGameState().getCurrentMap().getMapTiles();
+        Map currentMap = app.getGameState().getCurrentMap();
         int[] mapAreaXY = Run.getMapAreaDimensions();
         int[] currentMapXY = {
-                app.getGameState().getCurrentMap().getMapWidth(),
-                app.getGameState().getCurrentMap().getMapHeight()
+                currentMap.getMapWidth(),
+                currentMap.getMapHeight()
         };
+        int previousAnchorX = anchorUL[0];
+        int previousAnchorY = anchorUL[1];
         anchorUL = getAnchorUL(app, mapAreaXY, currentMapXY);
-        for(int y = 0; y < mapAreaXY[1]; y++) {
-            for(int x = 0; x < mapAreaXY[0]; x++) {
-                int yOffset = Math.abs(anchorUL[1]);
-                int xOffset = Math.abs(anchorUL[0]);
-                if(y + yOffset < 0 || x + xOffset < 0) {
-                    gc.drawImage(app.getGameState().getCurrentMap().getTileSet(0).getBlank(),
-                            x * Run.TILE_SIZE,
-                            y * Run.TILE_SIZE
-                    );
-                } else if(y + yOffset >= currentMapXY[1] || x + xOffset >= currentMapXY[0]) {
-                    gc.drawImage(app.getGameState().getCurrentMap().getTileSet(0).getBlank(),
-                            x * Run.TILE_SIZE,
-                            y * Run.TILE_SIZE
-                    );
-                } else {
-                    gc.drawImage(app.getGameState().getCurrentMap().getTile(
-                            mapTiles[y + yOffset][x + xOffset].getTileSet(),
-                            mapTiles[y + yOffset][x + xOffset].getTileID()
-                            ),
-                            x * Run.TILE_SIZE,
-                            y * Run.TILE_SIZE
-                    );
+        if(currentMap.getStreamer() != null) {
+            currentMap.getStreamer().retainView(anchorUL, mapAreaXY);
+        }
+        boolean partial = !fullRedrawRequested && lastDrawnMap == currentMap &&
+                previousAnchorX == anchorUL[0] && previousAnchorY == anchorUL[1] &&
+                lastDrawnMapArea[0] == mapAreaXY[0] && lastDrawnMapArea[1] == mapAreaXY[1];
+        fullRedrawRequested = false;
+        lastDrawnMap = currentMap;
+        lastDrawnMapArea = mapAreaXY;
+        // Work out where every entity overlay should be drawn this frame
+        LinkedHashMap<Entity, OverlayRect> overlays = new LinkedHashMap<>();
+        // only the drawables of the current map are walked, see EntityPartition
+        for (Drawable d : app.getGameState().getPartition(currentMap).getDrawables()) {
+            Entity e = (Entity) d;
+            if(e instanceof ItemOnMap) {
+                ItemOnMap item = (ItemOnMap) e;
+                overlays.put(e, new OverlayRect(item.getRelativeX(), item.getRelativeY(),
+                        item.getSpriteSheet(), item.getSpriteID(), 0, OverlayRect.NO_BAR
+                ));
+            } else if (e instanceof Character) {
+                Character c = (Character) e;
+                if (!c.isAlive()) {
+                    c.setCurrentSprite(c.getCharClass().getDeadTileID());
+                }
+                // check bounds of anchor map area
+                if((c.getY() < mapAreaXY[1] + anchorUL[1] && c.getY() >= anchorUL[1]) &&
+                        (c.getX() < mapAreaXY[0] + anchorUL[0] && c.getX() >= anchorUL[0])) {
+                    int barSide = OverlayRect.NO_BAR;
+                    if (c.getTeam() == Character.Team.PLAYER) {
+                        barSide = OverlayRect.LEFT_BAR;
+                    } else if (c.getTeam() == Character.Team.ENEMY) {
+                        barSide = OverlayRect.RIGHT_BAR;
+                    }
+                    double pixelPerHP = c.getMaxHP() / Run.TILE_SIZE;
+                    overlays.put(e, new OverlayRect(c.getRelativeX(), c.getRelativeY(),
+                            c.getSpriteSheet(), c.getCurrentSpriteID(), c.getHp() / pixelPerHP, barSide
+                    ));
                 }
-
             }
         }
-        // Draw UI prompt area below map area here
-        drawPromptArea(gc);
-        // Draw all entities
-        for (Entity e : app.getGameState().getEntities()) {
-            if (e instanceof Drawable) {
-                if(e instanceof ItemOnMap) {
-                    ((ItemOnMap) e).draw(gc);
-                } else if (((PhysicalEntity) e).getCurrentMap().equals(app.getGameState().getCurrentMap())) {
-                    if (e instanceof Character && !((Character) e).isAlive()) {
-                        ((Character) e).setCurrentSprite(((Character) e).getCharClass().getDeadTileID());
-                    }
-                    if (e instanceof Character) {
-                        double x;
-                        double y;
-                        double maxHP;
-                        double pixelPerHP;
-                        double currentHP;
-                        double currentHPDisplayed;
-                        double YaxisMod;
-                        x = ((Character) e).getX();
-                        y = ((Character) e).getY();
-                        double relX = ((Character) e).getRelativeX();
-                        double relY = ((Character) e).getRelativeY();
-                        // check bounds of anchor map area
-                        if((y < mapAreaXY[1] + anchorUL[1] && y >= anchorUL[1]) &&
-                                (x < mapAreaXY[0] + anchorUL[0] && x >= anchorUL[0])) {
-                            ((Drawable) e).draw(gc);
-                            maxHP = ((Character) e).getMaxHP();
-                            pixelPerHP = maxHP / Run.TILE_SIZE;
-                            currentHP = ((Character) e).getHp();
-                            currentHPDisplayed = currentHP / pixelPerHP;
-                            YaxisMod = (relY * Run.TILE_SIZE) + ((maxHP - currentHP) / pixelPerHP);
-                            gc.setFill(Color.RED);
-                            gc.setStroke(Color.BLACK);
-                            if (app.getGameState().getPlayerTeam().contains(e)) {
-                                gc.fillRect(relX * Run.TILE_SIZE, relY * Run.TILE_SIZE, 3, 32);
-                                gc.setFill(Color.GREEN);
-                                gc.setStroke(Color.BLACK);
-                                if (currentHPDisplayed < 0) {
-                                    currentHPDisplayed = 0;
-                                }
-                                gc.fillRect(relX * Run.TILE_SIZE, YaxisMod, 3, currentHPDisplayed);
-                            } else if (app.getGameState().getEnemyTeam().contains(e)) {
-                                gc.fillRect((relX * Run.TILE_SIZE) + 29, relY * Run.TILE_SIZE, 3, 32);
-                                gc.setFill(Color.GREEN);
-                                gc.setStroke(Color.BLACK);
-                                if (currentHPDisplayed < 0) {
-                                    currentHPDisplayed = 0;
-                                }
-                                gc.fillRect((relX * Run.TILE_SIZE) + 29, YaxisMod, 3, currentHPDisplayed);
-                            }
-                        }
+        if(partial) {
+            // Only repaint the tiles where an overlay appeared, disappeared, moved or changed
+            HashSet<Integer> dirtyTiles = new HashSet<>();
+            for(java.util.Map.Entry<Entity, OverlayRect> drawn: drawnOverlays.entrySet()) {
+                OverlayRect now = overlays.get(drawn.getKey());
+                if(!drawn.getValue().equals(now)) {
+                    dirtyTiles.add(drawn.getValue().tileKey());
+                    if(now != null) {
+                        dirtyTiles.add(now.tileKey());
                     }
                 }
             }
+            for(java.util.Map.Entry<Entity, OverlayRect> now: overlays.entrySet()) {
+                if(!drawnOverlays.containsKey(now.getKey())) {
+                    dirtyTiles.add(now.getValue().tileKey());
+                }
+            }
+            for(int key: dirtyTiles) {
+                int tileX = OverlayRect.keyX(key);
+                int tileY = OverlayRect.keyY(key);
+                if(tileX >= 0 && tileY >= 0 && tileX < mapAreaXY[0] && tileY < mapAreaXY[1]) {
+                    gc.clearRect(tileX * Run.TILE_SIZE, tileY * Run.TILE_SIZE, Run.TILE_SIZE, Run.TILE_SIZE);
+                    currentMap.getChunkCache().drawTile(gc, anchorUL, tileX, tileY);
+                }
+            }
+            for(java.util.Map.Entry<Entity, OverlayRect> now: overlays.entrySet()) {
+                if(dirtyTiles.contains(now.getValue().tileKey())) {
+                    drawOverlay(gc, now.getKey(), now.getValue());
+                }
+            }
+        } else {
+            gc.clearRect(0, 0, Run.SCREEN_WIDTH, Run.SCREEN_HEIGHT); // Clear canvas
+            // Terrain is drawn from pre-rendered chunks rather than tile by tile
+            currentMap.getChunkCache().draw(gc, anchorUL, mapAreaXY);
+            // Draw all entities
+            for(java.util.Map.Entry<Entity, OverlayRect> now: overlays.entrySet()) {
+                drawOverlay(gc, now.getKey(), now.getValue());
+            }
         }
+        drawnOverlays = overlays;
+        // Draw UI prompt area below map area here
+        drawPromptArea(gc);
         if (!app.getGameState().getNextTurn()) {
             String name = "";
             Entity target = null;
@@ -273,10 +320,10 @@ public class RenderUtil {
         int allyX;
         int allyY;
         int spriteSize = stageW >> 2;
-        gc.drawImage(ally.currentSprite,
+        ally.drawSprite(gc,
                 allyX = stageX + (stageW >> 3),
                 allyY = stageY + (stageH >> 2) + (stageH >> 4),
-                spriteSize, spriteSize
+                spriteSize
         );
         gc.setFill(Color.RED);
         gc.setStroke(Color.BLACK);
@@ -313,10 +360,10 @@ public class RenderUtil {
         );
         int enemyX;
         int enemyY;
-        gc.drawImage(enemy.currentSprite,
+        enemy.drawSprite(gc,
                 enemyX = stageX + stageW - (stageW >> 3) - (stageW >> 2),
                 enemyY = stageY + (stageH >> 2) + (stageH >> 4),
-                stageW >> 2, stageW >> 2
+                stageW >> 2
         );
         gc.setFill(Color.RED);
         gc.setStroke(Color.BLACK);
@@ -413,8 +460,8 @@ public class RenderUtil {
                     ally.setIsAttacking(true);
                 }
             }
-            gc.drawImage(ally.getCurrentSprite(), allyX, allyY, spriteSize, spriteSize);
-            gc.drawImage(enemy.getCurrentSprite(), enemyX, enemyY, spriteSize, spriteSize);
+            ally.drawSprite(gc, allyX, allyY, spriteSize);
+            enemy.drawSprite(gc, enemyX, enemyY, spriteSize);
         } else if (enemy.isBattleTurn()) {
             if (enemy.isAttacking()) {
                 if (enemy.getCharClass().getCompletedCycles() > 2) {
@@ -441,8 +488,8 @@ public class RenderUtil {
             } else {
                 enemy.setIsAttacking(true);
             }
-            gc.drawImage(ally.getCurrentSprite(), allyX, allyY, spriteSize, spriteSize);
-            gc.drawImage(enemy.getCurrentSprite(), enemyX, enemyY, spriteSize, spriteSize);
+            ally.drawSprite(gc, allyX, allyY, spriteSize);
+            enemy.drawSprite(gc, enemyX, enemyY, spriteSize);
         }
         if (battleFrameCounter >= CharacterClass.animationLength) {
             battleFrameCounter = 0;
@@ -476,34 +523,16 @@ public class RenderUtil {
         int count = 0;
         gc.setFill(Color.BLACK);
         gc.setFont(smallFont);
-        boolean iconPathJRT;
         for(Map m: app.getGameState().getMaps()) {
-            iconPathJRT = m.getPATH().contains("Mod");
-            String[] path = m.getPATH().split("/");
-            int index;
-            index = Math.max((path.length - 1), 0);
-            String iconName = path[index].split("\\.")[0] + "_Icon.png";
-            int lastSlash = -1;
-            for(int i=0; i<iconName.toCharArray().length; i++) {
-                if(iconName.charAt(i) == '/') {
-                    lastSlash = i;
-                }
+            // maps are only catalogued at this point, the icon is the only thing read for each one
+            if(m.getIcon() == null && FileOpUtils.doesFileExist(URI.create(m.getIconPath()))) {
+                m.setIcon(new Image(m.getIconPath()));
             }
-            iconName = iconName.substring(lastSlash + 1);
-            String toUse;
-            if(iconPathJRT) {
-                toUse = Run.MOD_ART_PATH + "/Maps/" + iconName;
+            if(m.getIcon() != null) {
+                gc.drawImage(m.getIcon(), squareXY[count][0], squareXY[count][1], squareSize, squareSize);
             } else {
-                toUse = Run.GAME_ART_PATH + "/Maps/" + iconName;
-            }
-            if(FileOpUtils.doesFileExist(URI.create(toUse))) {
-                app.getGameState().getMaps().get(count).setIcon(new Image(toUse));
-                gc.drawImage(app.getGameState().getMaps().get(count).getIcon(),
-                        squareXY[count][0], squareXY[count][1],
-                        squareSize, squareSize
-                );
-            } else {
-                gc.fillText(path[index], squareXY[count][0]+10, squareXY[count][1]+10);
+                String[] path = m.getPATH().split("/");
+                gc.fillText(path[Math.max(path.length - 1, 0)], squareXY[count][0]+10, squareXY[count][1]+10);
             }
             count++;
         }
@@ -528,6 +557,33 @@ public class RenderUtil {
         gc.fillText("Press ESC to exit to Main Menu!", Run.SCREEN_WIDTH >> 1, 120);
     }
 
+    /**
+     * Draws a single entity and if it is a team member its HP bar, both fit inside the entities tile.
+     * @param gc the graphics context to draw onto
+     * @param e the drawable entity
+     * @param rect the overlay information computed for the entity this frame
+     */
+    private static void drawOverlay(GraphicsContext gc, Entity e, OverlayRect rect) {
+        ((Drawable) e).draw(gc);
+        if(rect.barSide == OverlayRect.NO_BAR) {
+            return;
+        }
+        double barX = rect.tileX * Run.TILE_SIZE;
+        if(rect.barSide == OverlayRect.RIGHT_BAR) {
+            barX += 29;
+        }
+        double currentHPDisplayed = rect.hpDisplayed;
+        double YaxisMod = (rect.tileY * Run.TILE_SIZE) + (Run.TILE_SIZE - currentHPDisplayed);
+        gc.setFill(Color.RED);
+        gc.setStroke(Color.BLACK);
+        gc.fillRect(barX, rect.tileY * Run.TILE_SIZE, 3, 32);
+        gc.setFill(Color.GREEN);
+        if (currentHPDisplayed < 0) {
+            currentHPDisplayed = 0;
+        }
+        gc.fillRect(barX, YaxisMod, 3, currentHPDisplayed);
+    }
+
     public static int[] getAnchorUL(Run app, int[] mapAreaXY, int[] currentMapXY) {
         int[] playerXY = {
                 app.getGameState().getPlayerEntity().getX(),
@@ -556,8 +612,86 @@ public class RenderUtil {
         return anchorUL;
     }
 
+    /**
+     * Flags that something visible has changed so the next frame will be fully repainted.
+     * Should be called on state changes, map changes and map edits.
+     */
+    public static void requestRedraw() {
+        redrawRequested = true;
+        fullRedrawRequested = true;
+    }
+
+    /**
+     * Flags that only entities or the prompt area have changed so the next frame will be repainted.
+     * On the game screen only the tiles under overlays that moved or changed are repainted.
+     * Should be called on entity movement, hp changes, animation ticks and input.
+     */
+    public static void requestOverlayRedraw() { redrawRequested = true; }
+
+    /**
+     * Returns the count of frames that were skipped because nothing had changed since the last repaint.
+     * @return the count of skipped frames
+     */
+    public static long getSkippedFrames() { return skippedFrames; }
+
+    /**
+     * Returns true if the current state animates without any input and must be repainted every frame.
+     * @param app the main game application
+     * @return true if the current state must be repainted every frame
+     */
+    private static boolean isAnimating(Run app) {
+        return app.getGameState() != null && app.getGameState().getCurrentState() == GameState.STATE.BATTLE;
+    }
+
     public static void drawPromptArea(GraphicsContext gc) {
         gc.drawImage(paperBg, 0, Run.SCREEN_MAP_HEIGHT);
     }
 
+    /**
+     * The screen tile and appearance of an entity overlay as it was drawn, used to find what changed between frames.
+     */
+    private static class OverlayRect {
+
+        static final int NO_BAR = 0;
+        static final int LEFT_BAR = 1;
+        static final int RIGHT_BAR = 2;
+
+        final int tileX;
+        final int tileY;
+        final TileSet spriteSheet;
+        final int spriteID;
+        final double hpDisplayed;
+        final int barSide;
+
+        OverlayRect(int tileX, int tileY, TileSet spriteSheet, int spriteID, double hpDisplayed, int barSide) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.spriteSheet = spriteSheet;
+            this.spriteID = spriteID;
+            this.hpDisplayed = hpDisplayed;
+            this.barSide = barSide;
+        }
+
+        int tileKey() { return (tileY << 16) | (tileX & 0xFFFF); }
+
+        static int keyX(int key) { return (short) (key & 0xFFFF); }
+
+        static int keyY(int key) { return key >> 16; }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof OverlayRect)) {
+                return false;
+            }
+            OverlayRect other = (OverlayRect) o;
+            return tileX == other.tileX && tileY == other.tileY && spriteSheet == other.spriteSheet &&
+                    spriteID == other.spriteID &&
+                    hpDisplayed == other.hpDisplayed && barSide == other.barSide;
+        }
+
+        @Override
+        public int hashCode() { return tileKey(); }
+
+    }
+
 }
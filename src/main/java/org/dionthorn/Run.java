@@ -41,10 +41,12 @@ public class Run extends Application {
     public static URI MOD_ART_PATH;
     public static URI MOD_MAP_PATH;
     public static URI MOD_ITEM_PATH;
+    public static URI CACHE_PATH;
     public static int SCREEN_WIDTH;
     public static int SCREEN_HEIGHT;
     public static int SCREEN_MAP_HEIGHT;
     public static final int TILE_SIZE = 32;
+    public static boolean PRELOAD_MAPS = false;
     private final int[] DRAG_LOC = {-1, -1};
     private final long FPS = TimeUnit.SECONDS.toNanos(1L) / 60;
     private int lastSelectedCharUID;
@@ -64,12 +66,14 @@ public class Run extends Application {
      */
     public void update() {
         if(gameState != null && gameState.getCurrentState() == GameState.STATE.GAME) {
-            for(Entity e: gameState.getEntities()) {
-                if(e instanceof Updateable) {
-                    if( ((PhysicalEntity) e).getCurrentMap().equals(gameState.getCurrentMap()) ) {
-                        ((Updateable) e).update(gameState);
-                    }
+            MapChunkStreamer streamer = gameState.getCurrentMap().getStreamer();
+            // only the entities of the current map are updated, see EntityPartition
+            for(Updateable u: gameState.getPartition(gameState.getCurrentMap()).getUpdateables()) {
+                if(streamer != null) {
+                    // keep the tiles around active entities resident for their collision checks
+                    streamer.retainArea(((PhysicalEntity) u).getX(), ((PhysicalEntity) u).getY());
                 }
+                u.update(gameState);
             }
         }
     }
@@ -81,7 +85,8 @@ public class Run extends Application {
 
         Entity.GEN_COUNT = 0; // reset entity counter since this should be a 'fresh' game.
         for(String path: FileOpUtils.getFileNamesFromDirectory(GAME_MAP_PATH)) {
-            if(!path.equals(".gitattributes") && !path.contains("meta")) {
+            // only .dat files start a map, the .meta and .bin files of the same name are loaded by the Map itself
+            if(path != null && path.endsWith(".dat")) {
                 if(gameState != null) {
                     gameState.getMaps().add(new Map(GAME_MAP_PATH + (JRT ? "/" + path : path)));
                 } else {
@@ -96,7 +101,7 @@ public class Run extends Application {
             String[] tempList = testDir.list();
             if(testDir.isDirectory() && tempList != null && tempList.length != 0) {
                 for(String path: FileOpUtils.getFileNamesFromDirectory(MOD_MAP_PATH)) {
-                    if(!path.contains("meta")) {
+                    if(path != null && path.endsWith(".dat")) {
                         if(gameState != null) {
                             gameState.getMaps().add(new Map(MOD_MAP_PATH + (JRT ? "/" + path : path)));
                             programLogger.log(Level.INFO, "Maps loaded from Mod/Maps");
@@ -107,74 +112,19 @@ public class Run extends Application {
                 }
             }
         }
-        String[] startLoc = gameState.getCurrentMap().getMetaStartLoc().split(":")[0].split(",");
-        String[] allies = gameState.getCurrentMap().getMetaAllies().split(":")[0].split("/");
-        String[] enemies = gameState.getCurrentMap().getMetaEnemies().split(":")[0].split("/");
-        String[] items = gameState.getCurrentMap().getMetaItems().split(":")[0].split("/");
-
         // For now a default player entity, in future will have a character_creation state for building the player
-        gameState.getEntities().add(
+        gameState.addEntity(
                 new Player(
                         gameState.getCurrentMap(),
                         "Characters/MartialClassPlayer.png", "Player",
-                        Integer.parseInt(startLoc[0]), Integer.parseInt(startLoc[1]),
+                        gameState.getCurrentMap().getStartX(), gameState.getCurrentMap().getStartY(),
                         new MartialClass()
                 )
         );
-        gameState.getPlayerTeam().add(gameState.getPlayerEntity());
-
-        // setup allies
-        CharacterClass tempClass = null;
-        for(String ally: allies) {
-            if(!ally.equals("")) {
-                String[] temp = ally.split(",");
-                String name = temp[0];
-                int x = Integer.parseInt(temp[1]);
-                int y = Integer.parseInt(temp[2]);
-                if(temp[3].equals("magic")) {
-                    tempClass = new MagicClass();
-                } else if(temp[3].equals("martial")) {
-                    tempClass = new MartialClass();
-                }
-                assert tempClass != null;
-                NonPlayerCharacter tempChar = new NonPlayerCharacter(gameState.getCurrentMap(),
-                        tempClass.getDefaultSpriteAlly(), name, x, y, tempClass
-                );
-                gameState.getEntities().add(tempChar);
-                gameState.getPlayerTeam().add(tempChar);
-            }
-        }
+        gameState.addToTeam(gameState.getPlayerEntity(), Character.Team.PLAYER);
 
-        // setup enemies
-        for(String enemy: enemies) {
-            if(!enemy.equals("")) {
-                String[] temp = enemy.split(",");
-                String name = temp[0];
-                int x = Integer.parseInt(temp[1]);
-                int y = Integer.parseInt(temp[2]);
-                if(temp[3].equals("magic")) {
-                    tempClass = new MagicClass();
-                } else if(temp[3].equals("martial")) {
-                    tempClass = new MartialClass();
-                }
-                assert tempClass != null;
-                NonPlayerCharacter tempChar = new NonPlayerCharacter(gameState.getCurrentMap(),
-                        tempClass.getDefaultSpriteEnemy(), name, x, y, tempClass
-                );
-                gameState.getEntities().add(tempChar);
-                gameState.getEnemyTeam().add(tempChar);
-            }
-        }
-
-        // setup items
-        for(String line: items) {
-            // Gold,10,10/:ITEMS
-            if(!line.equals("") && !line.contains("//")) {
-                String[] values = line.split(",");
-                gameState.getEntities().add(ItemOnMap.makeItemOnMap(values[0], values[1],
-                        Integer.parseInt(values[2]), Integer.parseInt(values[3])));
-            }
-        }
+        // setup allies, enemies and items
+        gameState.spawnMapEntities();
     }
 
 
@@ -199,6 +149,7 @@ public class Run extends Application {
 
         // Keyboard handling
         rootScene.addEventHandler(KeyEvent.KEY_PRESSED, (key) -> {
+            RenderUtil.requestOverlayRedraw();
             // programLogger.log(Level.INFO, "[DEBUG] KeyInput: " + key.getCode());
             if (gameState == null || gameState.getCurrentState() == GameState.STATE.MAIN_MENU) {
                 if (key.getCode() == KeyCode.ESCAPE) {
@@ -232,12 +183,7 @@ public class Run extends Application {
                         ItemOnMap item = player.checkItemCollision(gameState, player.getX(), player.getY() - 1);
                         if(item != null) {
                             player.addItem(item);
-                            for(Entity e: gameState.getEntities()) {
-                                if(e.equals(item)) {
-                                    gameState.getEntities().remove(item);
-                                    break;
-                                }
-                            }
+                            gameState.removeItemOnMap(item);
                         }
 
                         if (!player.checkFriendlyCollision(gameState, player.getX(), player.getY() - 1)) {
@@ -260,12 +206,7 @@ public class Run extends Application {
                         ItemOnMap item = player.checkItemCollision(gameState, player.getX() + 1, player.getY());
                         if(item != null) {
                             player.addItem(item);
-                            for(Entity e: gameState.getEntities()) {
-                                if(e.equals(item)) {
-                                    gameState.getEntities().remove(item);
-                                    break;
-                                }
-                            }
+                            gameState.removeItemOnMap(item);
                         }
 
                         if (!player.checkFriendlyCollision(gameState, player.getX() + 1, player.getY())) {
@@ -288,12 +229,7 @@ public class Run extends Application {
                         ItemOnMap item = player.checkItemCollision(gameState, player.getX() - 1, player.getY());
                         if(item != null) {
                             player.addItem(item);
-                            for(Entity e: gameState.getEntities()) {
-                                if(e.equals(item)) {
-                                    gameState.getEntities().remove(item);
-                                    break;
-                                }
-                            }
+                            gameState.removeItemOnMap(item);
                         }
 
                         if (!player.checkFriendlyCollision(gameState, player.getX() - 1, player.getY())) {
@@ -316,12 +252,7 @@ public class Run extends Application {
                         ItemOnMap item = player.checkItemCollision(gameState, player.getX(), player.getY() + 1);
                         if(item != null) {
                             player.addItem(item);
-                            for(Entity e: gameState.getEntities()) {
-                                if(e.equals(item)) {
-                                    gameState.getEntities().remove(item);
-                                    break;
-                                }
-                            }
+                            gameState.removeItemOnMap(item);
                         }
 
                         if (!player.checkFriendlyCollision(gameState, player.getX(), player.getY() + 1)) {
@@ -402,7 +333,11 @@ public class Run extends Application {
                         }
                         String[] userSettings = { "SCREEN_WIDTH=" + SCREEN_WIDTH,
                                 "SCREEN_HEIGHT=" + SCREEN_HEIGHT,
-                                "SCREEN_MAP_HEIGHT=" + SCREEN_MAP_HEIGHT };
+                                "SCREEN_MAP_HEIGHT=" + SCREEN_MAP_HEIGHT,
+                                "TILESET_CACHE_MB=" + (TileSet.cacheBudgetBytes / (1024 * 1024)),
+                                "STREAM_MAP_TILES=" + MapChunkStreamer.streamThresholdTiles,
+                                "STREAM_CHUNKS=" + MapChunkStreamer.maxResidentChunks,
+                                "PRELOAD_MAPS=" + PRELOAD_MAPS };
                         FileOpUtils.writeFileLines(URI.create(MOD_PATH + "/user_settings.txt"), userSettings);
                         programLogger.log(Level.INFO, "user_settings has been updated to current graphics settings");
                     }
@@ -413,6 +348,7 @@ public class Run extends Application {
 
         // Mouse left click handling
         canvas.addEventHandler(MouseEvent.MOUSE_CLICKED, (mouseEvent) -> {
+            RenderUtil.requestOverlayRedraw();
             int mouseX = (int) mouseEvent.getX();
             int mouseY = (int) mouseEvent.getY();
             programLogger.log(Level.INFO, "Mouse Event: (" + mouseX + ", " + mouseY + ")");
@@ -423,19 +359,15 @@ public class Run extends Application {
                 // programLogger.log(Level.INFO, "x,y: " + tileX + " " + tileY);
                 if(DRAG_LOC[0] == -1) {
                     if(mouseEvent.getButton() == MouseButton.PRIMARY) {
-                        MapTile[][] tempMapTiles = gameState.getCurrentMap().getMapTiles();
-                        // programLogger.log(Level.INFO, "TILEID: " + tempMapTiles[tileY][tileX].getTileID());
-                        tempMapTiles[tileY][tileX].setTileID(devMenu.SELECTED_TILE_ID);
-                        tempMapTiles[tileY][tileX].setTileSet(devMenu.SELECTED_TILE_SET_ID);
-                        gameState.getCurrentMap().setMapTiles(tempMapTiles);
+                        // programLogger.log(Level.INFO, "TILEID: " + gameState.getCurrentMap().getTileID(tileX, tileY));
+                        gameState.getCurrentMap().setTile(tileX, tileY, devMenu.SELECTED_TILE_SET_ID,
+                                devMenu.SELECTED_TILE_ID
+                        );
                     } else if(mouseEvent.getButton() == MouseButton.SECONDARY) {
-                        MapTile[][] tempMapTiles = gameState.getCurrentMap().getMapTiles();
-                        // programLogger.log(Level.INFO, "TILEID: " + tempMapTiles[tileY][tileX].getTileID());
-                        tempMapTiles[tileY][tileX].setTileID(gameState.getCurrentMap().getTileSet(
-                                devMenu.SELECTED_TILE_SET_ID).getTiles().length - 1
+                        // programLogger.log(Level.INFO, "TILEID: " + gameState.getCurrentMap().getTileID(tileX, tileY));
+                        gameState.getCurrentMap().setTile(tileX, tileY, devMenu.SELECTED_TILE_SET_ID,
+                                gameState.getCurrentMap().getTileSet(devMenu.SELECTED_TILE_SET_ID).getTotalTiles() - 1
                         );
-                        tempMapTiles[tileY][tileX].setTileSet(devMenu.SELECTED_TILE_SET_ID);
-                        gameState.getCurrentMap().setMapTiles(tempMapTiles);
                     }
                 } else {
                     if(mouseEvent.getButton() == MouseButton.PRIMARY) {
@@ -444,37 +376,33 @@ public class Run extends Application {
                         if(releasedX <= DRAG_LOC[0] && releasedY > DRAG_LOC[1]) {
                             for (int y = DRAG_LOC[1]; y < releasedY + 1; y++) {
                                 for (int x = releasedX; x < DRAG_LOC[0] + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(devMenu.SELECTED_TILE_ID);
-                                    tempMap[y][x].setTileSet(devMenu.SELECTED_TILE_SET_ID);
-                                    gameState.getCurrentMap().setMapTiles(tempMap);
+                                    gameState.getCurrentMap().setTile(x, y, devMenu.SELECTED_TILE_SET_ID,
+                                            devMenu.SELECTED_TILE_ID
+                                    );
                                 }
                             }
                         } else if(releasedY <= DRAG_LOC[1] && releasedX > DRAG_LOC[0]) {
                             for(int y = releasedY; y < DRAG_LOC[1] + 1; y++) {
                                 for (int x = DRAG_LOC[0]; x < releasedX + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(devMenu.SELECTED_TILE_ID);
-                                    tempMap[y][x].setTileSet(devMenu.SELECTED_TILE_SET_ID);
-                                    gameState.getCurrentMap().setMapTiles(tempMap);
+                                    gameState.getCurrentMap().setTile(x, y, devMenu.SELECTED_TILE_SET_ID,
+                                            devMenu.SELECTED_TILE_ID
+                                    );
                                 }
                             }
                         } else if(releasedX <= DRAG_LOC[0]) {
                             for(int y = releasedY; y < DRAG_LOC[1] + 1; y++) {
                                 for(int x = releasedX; x < DRAG_LOC[0] + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(devMenu.SELECTED_TILE_ID);
-                                    tempMap[y][x].setTileSet(devMenu.SELECTED_TILE_SET_ID);
-                                    gameState.getCurrentMap().setMapTiles(tempMap);
+                                    gameState.getCurrentMap().setTile(x, y, devMenu.SELECTED_TILE_SET_ID,
+                                            devMenu.SELECTED_TILE_ID
+                                    );
                                 }
                             }
                         } else {
                             for(int y = DRAG_LOC[1]; y < releasedY + 1; y++) {
                                 for(int x = DRAG_LOC[0]; x < releasedX + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(devMenu.SELECTED_TILE_ID);
-                                    tempMap[y][x].setTileSet(devMenu.SELECTED_TILE_SET_ID);
-                                    gameState.getCurrentMap().setMapTiles(tempMap);
+                                    gameState.getCurrentMap().setTile(x, y, devMenu.SELECTED_TILE_SET_ID,
+                                            devMenu.SELECTED_TILE_ID
+                                    );
                                 }
                             }
                         }
@@ -484,8 +412,7 @@ public class Run extends Application {
                         if(releasedX <= DRAG_LOC[0] && releasedY > DRAG_LOC[1]) {
                             for(int y = DRAG_LOC[1]; y < releasedY + 1; y++) {
                                 for(int x = releasedX; x < DRAG_LOC[0] + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(gameState.getCurrentMap().getTileSet(
+                                    gameState.getCurrentMap().setTileID(x, y, gameState.getCurrentMap().getTileSet(
                                             devMenu.SELECTED_TILE_SET_ID).getTotalTiles() - 1
                                     );
                                 }
@@ -493,8 +420,7 @@ public class Run extends Application {
                         } else if(releasedY <= DRAG_LOC[1] && releasedX > DRAG_LOC[0]) {
                             for(int y = releasedY; y < DRAG_LOC[1] + 1; y++) {
                                 for(int x = DRAG_LOC[0]; x < releasedX + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(gameState.getCurrentMap().getTileSet(
+                                    gameState.getCurrentMap().setTileID(x, y, gameState.getCurrentMap().getTileSet(
                                             devMenu.SELECTED_TILE_SET_ID).getTotalTiles() - 1
                                     );
                                 }
@@ -502,8 +428,7 @@ public class Run extends Application {
                         } else if(releasedX <= DRAG_LOC[0]) {
                             for(int y = releasedY; y < DRAG_LOC[1] + 1; y++) {
                                 for(int x = releasedX; x < DRAG_LOC[0] + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(gameState.getCurrentMap().getTileSet(
+                                    gameState.getCurrentMap().setTileID(x, y, gameState.getCurrentMap().getTileSet(
                                             devMenu.SELECTED_TILE_SET_ID).getTotalTiles() - 1
                                     );
                                 }
@@ -511,8 +436,7 @@ public class Run extends Application {
                         } else {
                             for(int y = DRAG_LOC[1]; y < releasedY + 1; y++) {
                                 for(int x = DRAG_LOC[0]; x < releasedX + 1; x++) {
-                                    MapTile[][] tempMap = gameState.getCurrentMap().getMapTiles();
-                                    tempMap[y][x].setTileID(gameState.getCurrentMap().getTileSet(
+                                    gameState.getCurrentMap().setTileID(x, y, gameState.getCurrentMap().getTileSet(
                                             devMenu.SELECTED_TILE_SET_ID).getTotalTiles() - 1
                                     );
                                 }
@@ -531,7 +455,15 @@ public class Run extends Application {
                     if(mouseY <= yLoc && mouseY >= yLoc - yHeight) {
                         gameState = null;
                         newGame();
-                        gameState.setState(GameState.STATE.LEVEL_SELECTION);
+                        if(PRELOAD_MAPS) {
+                            // every map is fully loaded up front on the worker pool behind a loading screen
+                            gameState.setState(GameState.STATE.LOADING);
+                            MapLoader.loadAll(gameState.getMaps(),
+                                    () -> gameState.setState(GameState.STATE.LEVEL_SELECTION)
+                            );
+                        } else {
+                            gameState.setState(GameState.STATE.LEVEL_SELECTION);
+                        }
                     }
                 }
                 xLoc = RenderUtil.menuSettingsBounds[0];
@@ -548,28 +480,25 @@ public class Run extends Application {
                 }
             } else if(gameState.getCurrentState() == GameState.STATE.GAME) {
                 int[] tileXY = { mouseX / TILE_SIZE, mouseY / TILE_SIZE };
-                for(Entity e: gameState.getEntities()) {
-                    if(e instanceof Character) {
-                        int charX = ((Character) e).getRelativeX();
-                        int charY = ((Character) e).getRelativeY();
-                        if(charX == tileXY[0] && charY == tileXY[1]) {
-                            lastSelectedCharUID = e.getUID();
-                            programLogger.log(Level.INFO, "A Character was Clicked" + SYS_LINE_SEP +
-                                    "getUID returns: " + e.getUID() + SYS_LINE_SEP +
-                                    "getName returns: " + ((Character) e).getName() + SYS_LINE_SEP +
-                                    "isMoveTurn returns: " + ((Character) e).isMoveTurn() + SYS_LINE_SEP +
-                                    "isAlive returns: " + ((Character) e).isAlive() + SYS_LINE_SEP +
-                                    "getHp returns: " + ((Character)e).getHp() + SYS_LINE_SEP +
-                                    "getAttack returns: " + ((Character)e).getAttack() + SYS_LINE_SEP +
-                                    "getCritical returns: " + ((Character)e).getCritical() + SYS_LINE_SEP +
-                                    "getDefense returns: " + ((Character)e).getDefense() + SYS_LINE_SEP +
-                                    "getCharClass.getLevel returns: " +
-                                    ((Character) e).getCharClass().getLevel() + SYS_LINE_SEP +
-                                    "getCharClass.getCurrentXP returns: " +
-                                    ((Character) e).getCharClass().getCurrentXP()
-                            );
-                        }
-                    }
+                Entity e = gameState.getCurrentMap().getOccupant(tileXY[0] + RenderUtil.anchorUL[0],
+                        tileXY[1] + RenderUtil.anchorUL[1]
+                );
+                if(e instanceof Character) {
+                    lastSelectedCharUID = e.getUID();
+                    programLogger.log(Level.INFO, "A Character was Clicked" + SYS_LINE_SEP +
+                            "getUID returns: " + e.getUID() + SYS_LINE_SEP +
+                            "getName returns: " + ((Character) e).getName() + SYS_LINE_SEP +
+                            "isMoveTurn returns: " + ((Character) e).isMoveTurn() + SYS_LINE_SEP +
+                            "isAlive returns: " + ((Character) e).isAlive() + SYS_LINE_SEP +
+                            "getHp returns: " + ((Character)e).getHp() + SYS_LINE_SEP +
+                            "getAttack returns: " + ((Character)e).getAttack() + SYS_LINE_SEP +
+                            "getCritical returns: " + ((Character)e).getCritical() + SYS_LINE_SEP +
+                            "getDefense returns: " + ((Character)e).getDefense() + SYS_LINE_SEP +
+                            "getCharClass.getLevel returns: " +
+                            ((Character) e).getCharClass().getLevel() + SYS_LINE_SEP +
+                            "getCharClass.getCurrentXP returns: " +
+                            ((Character) e).getCharClass().getCurrentXP()
+                    );
                 }
             } else if(gameState.getCurrentState() == GameState.STATE.BATTLE) {
                 final int defendX = (SCREEN_WIDTH>>1)+(SCREEN_WIDTH>>4);
@@ -790,6 +719,18 @@ public class Run extends Application {
             }
         }
 
+        // The Cache folder holds data derived from GameData and Mod such as sliced tilesets, it is always next to
+        // where /Mod/ would be and can be deleted at any time to force everything to be rebuilt.
+        Path cachePath = Paths.get("", "Cache").toAbsolutePath();
+        if(new File(cachePath.toString()).exists()) {
+            programLogger.log(Level.INFO,"Cache folder found at: " + cachePath);
+        } else if(!new File(cachePath.toString()).mkdir()) {
+            programLogger.log(Level.INFO,"Failed to Create Cache Directory!");
+        } else {
+            programLogger.log(Level.INFO,"Cache folder created here: " + cachePath);
+        }
+        CACHE_PATH = cachePath.toUri();
+
         // Need to check if /Mod/ has a user_settings.txt
         // if not then use the internal jrt config.txt default settings
         URI config;
@@ -809,6 +750,14 @@ public class Run extends Application {
                 SCREEN_HEIGHT = Integer.parseInt(line.split("=")[1]);
             } else if(line.contains("SCREEN_MAP_HEIGHT")) {
                 SCREEN_MAP_HEIGHT = Integer.parseInt(line.split("=")[1]);
+            } else if(line.contains("TILESET_CACHE_MB")) {
+                TileSet.cacheBudgetBytes = Long.parseLong(line.split("=")[1]) * 1024 * 1024;
+            } else if(line.contains("STREAM_MAP_TILES")) {
+                MapChunkStreamer.streamThresholdTiles = Integer.parseInt(line.split("=")[1]);
+            } else if(line.contains("STREAM_CHUNKS")) {
+                MapChunkStreamer.maxResidentChunks = Integer.parseInt(line.split("=")[1]);
+            } else if(line.contains("PRELOAD_MAPS")) {
+                PRELOAD_MAPS = Boolean.parseBoolean(line.split("=")[1].trim());
             }
         }
         // Launch the JavaFX Application this will take us to @Override public void start(Stage primaryStage)
@@ -0,0 +1,138 @@
+package org.dionthorn;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+/**
+ * A SpawnRecord is one ally, enemy or item a Map places when it is entered, parsed once from its .meta file.
+ * Ally and enemy entries are of the form name,x,y,class where class is magic or martial, item entries are of the
+ * form itemset,name,x,y where itemset is the name of the item definition .dat file. Entries of a meta line are
+ * separated by / and the line ends with its :{type} tag, such as AO1,5,18,martial/AO2,5,19,martial/:ALLIES
+ */
+public class SpawnRecord {
+
+    public enum Kind { ALLY, ENEMY, ITEM }
+
+    private final Kind kind;
+    private final String name;
+    private final int x;
+    private final int y;
+    private final String className;
+    private final String itemSet;
+
+    /**
+     * Default Constructor, className is only used by allies and enemies and itemSet only by items.
+     * @param kind what is spawned
+     * @param name the name of the character or of the item within its item set
+     * @param x the x location to spawn at
+     * @param y the y location to spawn at
+     * @param className the character class magic or martial, null for items
+     * @param itemSet the item definition file of the item, null for characters
+     */
+    public SpawnRecord(Kind kind, String name, int x, int y, String className, String itemSet) {
+        this.kind = kind;
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.className = className;
+        this.itemSet = itemSet;
+    }
+
+    /**
+     * Parses every entry of a .meta line of the provided kind, malformed entries are logged and skipped.
+     * @param line the full meta line including its :{type} tag
+     * @param kind the kind of the entries on the line
+     * @return the records of the line in order
+     */
+    public static SpawnRecord[] parseMetaLine(String line, Kind kind) {
+        ArrayList<SpawnRecord> records = new ArrayList<>();
+        for(String entry: line.split(":")[0].split("/")) {
+            if(entry.isBlank()) {
+                continue;
+            }
+            String[] values = entry.split(",");
+            try {
+                if(kind == Kind.ITEM) {
+                    records.add(new SpawnRecord(kind, values[1], Integer.parseInt(values[2].trim()),
+                            Integer.parseInt(values[3].trim()), null, values[0]
+                    ));
+                } else if(values[3].equals("magic") || values[3].equals("martial")) {
+                    records.add(new SpawnRecord(kind, values[0], Integer.parseInt(values[1].trim()),
+                            Integer.parseInt(values[2].trim()), values[3], null
+                    ));
+                } else {
+                    Run.programLogger.log(Level.WARNING, "Unknown character class in spawn: " + entry);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                Run.programLogger.log(Level.WARNING, "Malformed spawn: " + entry);
+            }
+        }
+        return records.toArray(new SpawnRecord[0]);
+    }
+
+    /**
+     * Returns the .meta line holding records, the inverse of parseMetaLine.
+     * @param records the records to write
+     * @param tag the meta tag ending the line such as ALLIES
+     * @return the meta line
+     */
+    public static String toMetaLine(SpawnRecord[] records, String tag) {
+        StringBuilder line = new StringBuilder();
+        for(SpawnRecord record: records) {
+            if(record.kind == Kind.ITEM) {
+                line.append(String.format("%s,%s,%d,%d/", record.itemSet, record.name, record.x, record.y));
+            } else {
+                line.append(String.format("%s,%d,%d,%s/", record.name, record.x, record.y, record.className));
+            }
+        }
+        return line.append(":").append(tag).toString();
+    }
+
+    /**
+     * Returns a new CharacterClass of the class of this ally or enemy.
+     * @return a new magic or martial character class
+     */
+    public CharacterClass makeCharacterClass() {
+        if(className.equals("magic")) {
+            return new MagicClass();
+        }
+        return new MartialClass();
+    }
+
+    /**
+     * Returns what this record spawns.
+     * @return the kind of the record
+     */
+    public Kind getKind() { return kind; }
+
+    /**
+     * Returns the name of the character or of the item within its item set.
+     * @return the name to spawn
+     */
+    public String getName() { return name; }
+
+    /**
+     * Returns the x location to spawn at.
+     * @return the x location
+     */
+    public int getX() { return x; }
+
+    /**
+     * Returns the y location to spawn at.
+     * @return the y location
+     */
+    public int getY() { return y; }
+
+    /**
+     * Returns the character class name magic or martial, null for items.
+     * @return the class name
+     */
+    public String getClassName() { return className; }
+
+    /**
+     * Returns the item definition file of the item, null for characters.
+     * @return the item set name
+     */
+    public String getItemSet() { return itemSet; }
+
+}
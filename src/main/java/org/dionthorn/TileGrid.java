@@ -0,0 +1,118 @@
+package org.dionthorn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A TileGrid holds at most one value per tile of a Map for constant time "what is on tile x,y" lookups.
+ * Maps small enough to be held in memory use a dense array indexed by (y * width) + x, maps large enough to be
+ * streamed by a MapChunkStreamer use a hash map of only the occupied tiles instead, keyed by a long index as
+ * their tile count can exceed the range of an int.
+ * Locations outside of the grid hold nothing and are ignored.
+ * @param <T> the type of value held per tile
+ */
+public class TileGrid<T> {
+
+    private final int width;
+    private final int height;
+    private final T[] dense;
+    private final HashMap<Long, T> sparse;
+
+    /**
+     * Default Constructor creates an empty grid of width * height tiles.
+     * @param width the width in tiles of the grid
+     * @param height the height in tiles of the grid
+     */
+    @SuppressWarnings("unchecked")
+    public TileGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        if(MapChunkStreamer.shouldStream(width, height)) {
+            dense = null;
+            sparse = new HashMap<>();
+        } else {
+            dense = (T[]) new Object[width * height];
+            sparse = null;
+        }
+    }
+
+    /**
+     * Returns true if x,y is a tile of this grid.
+     * @param x the x location to check
+     * @param y the y location to check
+     * @return true if the location is inside the grid
+     */
+    public boolean contains(int x, int y) { return x >= 0 && y >= 0 && x < width && y < height; }
+
+    /**
+     * Returns the value on the tile at x,y.
+     * @param x the x location to check
+     * @param y the y location to check
+     * @return the value on the tile or null if there is none or the location is outside the grid
+     */
+    public T get(int x, int y) {
+        if(!contains(x, y)) {
+            return null;
+        }
+        return dense != null ? dense[(y * width) + x] : sparse.get(sparseIndex(x, y));
+    }
+
+    /**
+     * Will place value on the tile at x,y replacing anything already there.
+     * @param x the x location to set
+     * @param y the y location to set
+     * @param value the value to place
+     * @return the value that was replaced or null
+     */
+    public T put(int x, int y, T value) {
+        if(!contains(x, y)) {
+            return null;
+        }
+        if(dense != null) {
+            int index = (y * width) + x;
+            T previous = dense[index];
+            dense[index] = value;
+            return previous;
+        }
+        return sparse.put(sparseIndex(x, y), value);
+    }
+
+    /**
+     * Will clear the tile at x,y only if it holds expected, so a value that was replaced isn't removed by mistake.
+     * @param x the x location to clear
+     * @param y the y location to clear
+     * @param expected the value expected on the tile
+     * @return true if the tile held expected and was cleared
+     */
+    public boolean remove(int x, int y, T expected) {
+        if(get(x, y) != expected || expected == null) {
+            return false;
+        }
+        if(dense != null) {
+            dense[(y * width) + x] = null;
+        } else {
+            sparse.remove(sparseIndex(x, y));
+        }
+        return true;
+    }
+
+    /**
+     * Will clear every tile of the grid.
+     */
+    public void clear() {
+        if(dense != null) {
+            Arrays.fill(dense, null);
+        } else {
+            sparse.clear();
+        }
+    }
+
+    /**
+     * Returns the key of the tile at x,y in the sparse map.
+     * @param x the x location of the tile
+     * @param y the y location of the tile
+     * @return the row major index of the tile as a long
+     */
+    private long sparseIndex(int x, int y) { return ((long) y * width) + x; }
+
+}
@@ -1,13 +1,18 @@
 package org.dionthorn;
 
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
 import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 /**
@@ -20,20 +25,31 @@ import java.util.logging.Level;
  * The LAST image of a tileSet must be a 'blank' tile.
  * If the entire tileset isn't composed of unique images,
  * all other unused space must be the same image as the 'blank' tile.
- * All tiles matching the 'blank' tile will be automatically trimmed to save space in the Image[].
+ * All tiles matching the 'blank' tile will be automatically trimmed to save space in the atlas.
+ * The remaining tiles are repacked in TileID order into a single atlas image followed by the 'blank' tile,
+ * tiles are drawn from the atlas using their source rectangle rather than as separate images.
+ * The sliced atlas, removed TileIDs and tile hashes are held in a shared TileSetData, written to the Cache folder
+ * and reused on the next launch for as long as the source .png keeps the same size and modified time.
+ * In memory the TileSetData are kept in a least recently used cache limited to cacheBudgetBytes, data evicted from
+ * it while a TileSet still uses it is found again through a weak reference instead of being sliced a second time.
  * All tileSets should be found in GameData/Art.
  */
 public class TileSet {
 
-    private static final ArrayList<TileSet> tileSetCache = new ArrayList<>();
-    private final String tileSetPath;
-    private final Image tileSetSrc;
-    private Image[] tiles;
-    private Image blank;
-    private int totalTiles;
-    private final ArrayList<Integer> removedTileIDList = new ArrayList<>();
-    private final ArrayList<Integer> metaFire = new ArrayList<>();
-    private final ArrayList<Integer> metaImpassable = new ArrayList<>();
+    private static final LinkedHashMap<String, TileSetData> tileSetCache = new LinkedHashMap<>(16, 0.75f, true);
+    // tilesets currently being sliced by another thread, guarded by tileSetCache
+    private static final HashMap<String, CompletableFuture<TileSetData>> pendingLoads = new HashMap<>();
+    // every TileSetData still reachable from anywhere, cached or not, guarded by tileSetCache
+    private static final HashMap<String, DataReference> liveData = new HashMap<>();
+    private static final ReferenceQueue<TileSetData> collectedData = new ReferenceQueue<>();
+    // approximate heap the cached tilesets may hold before the least recently used are dropped, see TILESET_CACHE_MB
+    public static long cacheBudgetBytes = 256L * 1024 * 1024;
+    private static long cachedBytes = 0;
+    private final TileSetData data;
+    // the TileIDs tagged with each TileType by the map meta data, DEFAULT is never tagged
+    private final EnumMap<MapTile.TileType, ArrayList<Integer>> metaTags = new EnumMap<>(MapTile.TileType.class);
+    // TileID to TileType flags built from metaTags
+    private byte[] typeFlags = new byte[0];
 
     /**
      * Constructor creates the TileSet object from a path to a .png file and the size of the squares to cut.
@@ -41,243 +57,306 @@ public class TileSet {
      * @param TILE_SIZE the size of the squares to cut the image into default 32
      */
     public TileSet(String path, int TILE_SIZE) {
+        data = getTileSetData(path, TILE_SIZE);
+    }
 
-        boolean sameFound = false;
-        int sameIndex = 0;
-        for(int i=0; i<tileSetCache.size(); i++) {
-            if(tileSetCache.get(i).getTileSetPath().equals(path)) {
-                sameFound = true;
-                sameIndex = i;
-                break;
-            }
+    /**
+     * Copy constructor creates a TileSet sharing the sliced data of other with its own copy of the meta data.
+     * @param other the tileset to copy
+     */
+    public TileSet(TileSet other) {
+        data = other.data;
+        for(java.util.Map.Entry<MapTile.TileType, ArrayList<Integer>> tagged: other.metaTags.entrySet()) {
+            metaTags.put(tagged.getKey(), new ArrayList<>(tagged.getValue()));
         }
-        tileSetPath = path;
-        if(sameFound) {
-            tileSetSrc = tileSetCache.get(sameIndex).getTileSetSrc();
-            tiles = tileSetCache.get(sameIndex).getTiles();
-            blank = tileSetCache.get(sameIndex).getBlank();
-            Integer[] boxedArray = Arrays.stream(
-                    tileSetCache.get(sameIndex).getRemovedTileID()
-            ).boxed().toArray(Integer[]::new);
-            Collections.addAll(removedTileIDList, boxedArray);
-            totalTiles = tileSetCache.get(sameIndex).getTotalTiles();
-        } else {
-            boolean useMOD = false;
-            if(path.contains("MOD.")) {
-                useMOD = true;
+        typeFlags = other.typeFlags.clone();
+    }
+
+    /**
+     * Weak reference to a TileSetData that remembers its cache key so it can be dropped from liveData once collected.
+     */
+    private static class DataReference extends WeakReference<TileSetData> {
+        private final String key;
+
+        private DataReference(String key, TileSetData data) {
+            super(data, collectedData);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Returns the shared TileSetData for path and TILE_SIZE, slicing or loading it from the Cache folder on a miss.
+     * The least recently used entries are evicted while the cache is over cacheBudgetBytes. Evicted data stays
+     * alive for as long as a TileSet still references it, so a miss first looks for it in liveData and puts it back
+     * in the cache rather than loading a second copy. Only data nothing else uses is actually released.
+     * Safe to call from several threads, a miss is sliced outside of the lock so different tilesets load in
+     * parallel while callers wanting a tileset that is already being sliced wait for it.
+     * @param path the relative String that points to the desired .png file on disk
+     * @param TILE_SIZE the size of the squares to cut the image into
+     * @return the shared data of the tileset
+     */
+    private static TileSetData getTileSetData(String path, int TILE_SIZE) {
+        String key = path + "@" + TILE_SIZE;
+        CompletableFuture<TileSetData> pending;
+        synchronized(tileSetCache) {
+            TileSetData cached = tileSetCache.get(key);
+            if(cached != null) {
+                return cached;
+            }
+            cached = getLiveData(key);
+            if(cached != null) {
+                cacheData(key, cached);
+                return cached;
             }
-            tileSetSrc = new Image((useMOD ? Run.MOD_ART_PATH : Run.GAME_ART_PATH) + "/" + tileSetPath);
-            tiles = makeTiles(tileSetSrc, TILE_SIZE);
-            if (tiles.length == 0) {
-                Run.programLogger.log(Level.SEVERE, "NO TILES DETECTED");
-            } else {
-                blank = tiles[tiles.length - 1];
-                int sizeOriginal = tiles.length;
-                for (int step = 0; step < tiles.length; step++) {
-                    if (areImagesSame(tiles[step], blank)) {
-                        removedTileIDList.add(step);
-                    }
-                }
-                tiles = removeSameElements(tiles, blank);
-                int removedTilesCount = sizeOriginal - tiles.length;
-                totalTiles = tiles.length;
-                Run.programLogger.log(Level.INFO, String.format("Tiles Removed From %s: %d", path, removedTilesCount));
+            pending = pendingLoads.get(key);
+            if(pending == null) {
+                pendingLoads.put(key, new CompletableFuture<>());
             }
-            TileSet.tileSetCache.add(this);
-            tileSetCache.trimToSize();
+        }
+        if(pending != null) {
+            return pending.join();
+        }
+        TileSetData loaded;
+        try {
+            loaded = new TileSetData(path, TILE_SIZE);
+        } catch (RuntimeException e) {
+            synchronized(tileSetCache) {
+                pendingLoads.remove(key).completeExceptionally(e);
+            }
+            throw e;
+        }
+        synchronized(tileSetCache) {
+            pendingLoads.remove(key).complete(loaded);
+            liveData.put(key, new DataReference(key, loaded));
+            cacheData(key, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the TileSetData of key if it is still reachable after being evicted, dropping the entries of data
+     * that has been collected since the last call. Must be called while holding the lock of tileSetCache.
+     * @param key the cache key of the data
+     * @return the live data or null if it was never loaded or has been collected
+     */
+    private static TileSetData getLiveData(String key) {
+        DataReference collected;
+        while((collected = (DataReference) collectedData.poll()) != null) {
+            liveData.remove(collected.key, collected);
+        }
+        DataReference reference = liveData.get(key);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Puts data in the cache as the most recently used entry then evicts the least recently used entries while the
+     * cache is over cacheBudgetBytes. Must be called while holding the lock of tileSetCache.
+     * @param key the cache key of the data
+     * @param data the data to cache
+     */
+    private static void cacheData(String key, TileSetData data) {
+        tileSetCache.put(key, data);
+        cachedBytes += data.getApproximateBytes();
+        Iterator<TileSetData> eldest = tileSetCache.values().iterator();
+        while(cachedBytes > cacheBudgetBytes && tileSetCache.size() > 1) {
+            TileSetData evicted = eldest.next();
+            cachedBytes -= evicted.getApproximateBytes();
+            eldest.remove();
+            Run.programLogger.log(Level.INFO, String.format("Evicted %s@%d from tileset cache",
+                    evicted.getTileSetPath(), evicted.getTileSize())
+            );
         }
     }
+
     // Getters and Setters
     /**
      * Returns an integer array representing the id of where 'blank' duplicate tiles would be on the full image.
+     * The array is shared with every TileSet of the same path and must not be modified.
      * @return the integer array of tileIDs of 'blank' duplicates.
      */
-    public int[] getRemovedTileID() {
-        int[] toReturn = new int[removedTileIDList.size()];
-        int step = 0;
-        for(Integer i: removedTileIDList) {
-            int ID = i;
-            toReturn[step] = ID;
-            step++;
-        }
-        return toReturn;
-    }
+    public int[] getRemovedTileID() { return data.getRemovedTileIDs(); }
 
     /**
      * Returns the TileSet objects relative path as a String object.
      * @return the tileset path as a string.
      */
+    public String getTileSetPath() { return data.getTileSetPath(); }
 
-    public String getTileSetPath() { return tileSetPath; }
     /**
-     * Returns the full source image stored for the TileSet.
+     * Returns the full source image stored for the TileSet, it is only loaded when first needed if the
+     * TileSet was filled from the tile cache.
      * @return the image of the original full tileset
      */
-    public Image getTileSetSrc() { return tileSetSrc; }
+    public Image getTileSetSrc() { return data.getTileSetSrc(); }
 
     /**
-     * Returns an image array of all the tiles associated with the TileSet.
-     * @return the image array of all the tileset tiles
+     * Returns the atlas image holding every usable tile of the TileSet.
+     * @return the atlas image of the tileset
      */
-    public Image[] getTiles() { return tiles; }
+    public Image getAtlas() { return data.getAtlas(); }
 
     /**
-     * Returns the Image object of a tile specified by its tileID.
+     * Returns the size in pixels of the square tiles of this TileSet.
+     * @return the tile size in pixels
+     */
+    public int getTileSize() { return data.getTileSize(); }
+
+    /**
+     * Returns the x location in pixels of the tile specified by tileID within the atlas.
+     * @param tileID the index of the tile
+     * @return the x location of the tile in the atlas
+     */
+    public int getTileX(int tileID) { return (tileID % data.getAtlasColumns()) * data.getTileSize(); }
+
+    /**
+     * Returns the y location in pixels of the tile specified by tileID within the atlas.
      * @param tileID the index of the tile
-     * @return the image of the tile specified by tileID
+     * @return the y location of the tile in the atlas
      */
-    public Image getTile(int tileID) { return tiles[tileID]; }
+    public int getTileY(int tileID) { return (tileID / data.getAtlasColumns()) * data.getTileSize(); }
+
+    /**
+     * Returns the source rectangle of the tile specified by tileID within the atlas, used as an ImageView viewport.
+     * @param tileID the index of the tile
+     * @return the rectangle of the tile in the atlas
+     */
+    public Rectangle2D getTileViewport(int tileID) {
+        return new Rectangle2D(getTileX(tileID), getTileY(tileID), data.getTileSize(), data.getTileSize());
+    }
+
+    /**
+     * Will draw the tile specified by tileID from the atlas to the graphics context.
+     * @param gc the graphics context to draw onto
+     * @param tileID the index of the tile
+     * @param x the x location to draw at
+     * @param y the y location to draw at
+     * @param w the width to draw the tile at
+     * @param h the height to draw the tile at
+     */
+    public void drawTile(GraphicsContext gc, int tileID, double x, double y, double w, double h) {
+        gc.drawImage(data.getAtlas(), getTileX(tileID), getTileY(tileID), data.getTileSize(), data.getTileSize(),
+                x, y, w, h
+        );
+    }
+
+    /**
+     * Will draw the 'blank' tile of the TileSet to the graphics context.
+     * @param gc the graphics context to draw onto
+     * @param x the x location to draw at
+     * @param y the y location to draw at
+     * @param w the width to draw the tile at
+     * @param h the height to draw the tile at
+     */
+    public void drawBlank(GraphicsContext gc, double x, double y, double w, double h) {
+        drawTile(gc, getBlankID(), x, y, w, h);
+    }
+
+    /**
+     * Will copy the pixels of the tile specified by tileID from the atlas into the pixel writer at x,y.
+     * @param pw the pixel writer to copy into
+     * @param tileID the index of the tile
+     * @param x the x location to copy to
+     * @param y the y location to copy to
+     */
+    public void writeTile(PixelWriter pw, int tileID, int x, int y) {
+        pw.setPixels(x, y, data.getTileSize(), data.getTileSize(), data.getAtlas().getPixelReader(),
+                getTileX(tileID), getTileY(tileID)
+        );
+    }
 
     /**
      * Returns the count of the usable Tiles in the TileSet.
      * @return the integer reference to the total usable tiles in the set
      */
-    public int getTotalTiles() { return totalTiles; }
+    public int getTotalTiles() { return data.getTotalTiles(); }
 
     /**
-     * Returns the Image object in the TileSet that represents the 'blank' Tile.
+     * Returns the TileID in the TileSet that represents the 'blank' Tile, it is always the last usable tile.
      * The 'blank' tile will be whatever the last square in the image is, it is used to remove duplicate 'blank' tiles.
-     * @return the image of the 'blank' tile in the tileset
+     * @return the tile id of the 'blank' tile in the tileset
      */
-    public Image getBlank() { return blank; }
+    public int getBlankID() { return data.getTotalTiles() - 1; }
 
-    public ArrayList<Integer> getMetaFire() { return metaFire; }
+    /**
+     * Returns true if the square at sourceTileID of the original full image matches the 'blank' tile.
+     * @param sourceTileID the index of the square in the original full image
+     * @return true if the square is a match of the 'blank' tile
+     */
+    public boolean isSourceTileBlank(int sourceTileID) { return data.isSourceTileBlank(sourceTileID); }
 
-    public ArrayList<Integer> getMetaImpassable() { return metaImpassable; }
+    public ArrayList<Integer> getMetaFire() { return getMetaTagged(MapTile.TileType.FIRE); }
 
-    public void setMetaFireID(int tileID, boolean remove) {
-        metaFire.trimToSize();
-        boolean found = false;
-        if(!remove) {
-            for(int i: metaFire) {
-                if(i == tileID) {
-                    found = true;
-                    break;
-                }
-            }
-            if(!found) {
-                metaFire.add(tileID);
-            }
-        } else {
-            int target = 0;
-            for(int index=0; index<metaFire.size(); index++) {
-                if(metaFire.get(index) == tileID) {
-                    found = true;
-                    target = index;
-                    break;
-                }
-            }
-            if(found) {
-                metaFire.remove(target);
-            }
-        }
-    }
+    public ArrayList<Integer> getMetaImpassable() { return getMetaTagged(MapTile.TileType.IMPASSABLE); }
+
+    public void setMetaFireID(int tileID, boolean remove) { setMetaTagID(MapTile.TileType.FIRE, tileID, remove); }
 
     public void setMetaImpassableID(int tileID, boolean remove) {
-        boolean found = false;
-        if(!remove) {
-            for(int i: metaImpassable) {
-                if(i == tileID) {
-                    found = true;
-                    break;
-                }
-            }
-            if(!found) {
-                metaImpassable.add(tileID);
-            }
-        } else {
-            int target = 0;
-            for(int index=0; index<metaImpassable.size(); index++) {
-                if(metaImpassable.get(index) == tileID) {
-                    found = true;
-                    target = index;
-                    break;
-                }
-            }
-            if(found) {
-                metaImpassable.remove(target);
-            }
-        }
+        setMetaTagID(MapTile.TileType.IMPASSABLE, tileID, remove);
     }
 
-    // Static Methods
     /**
-     * Processes a full Image tileset into an Image[] where each Image in the array is a square where all sides are
-     * of length TILE_SIZE.
-     * @param tileSet the full size image of the tileset
-     * @param TILE_SIZE the size of the squares that the image will be cut into
-     * @return an image array of all the tiles in the provided tileset where each tile is of size tile_size squared
+     * Returns the TileIDs tagged as type in the meta data of this TileSet.
+     * @param type the tag to check
+     * @return the list of tile ids tagged as type
      */
-    private static Image[] makeTiles(Image tileSet, int TILE_SIZE) {
-        int srcW = (int) tileSet.getWidth();
-        int srcH = (int) tileSet.getHeight();
-        int maxTiles = ((srcW / TILE_SIZE) * (srcH/ TILE_SIZE));
-        int maxTilesWidth = (srcW / TILE_SIZE);
-        Image[] toReturn = new Image[maxTiles];
-        PixelReader pr = tileSet.getPixelReader();
-        PixelWriter pw;
-        int wCount = 0;
-        int hCount = 0;
-        int xOffset;
-        int yOffset;
-        for(int i=0; i<maxTiles; i++) {
-            WritableImage wImg = new WritableImage(TILE_SIZE, TILE_SIZE);
-            pw = wImg.getPixelWriter();
-            if(wCount >= maxTilesWidth) {
-                wCount = 0;
-                hCount++;
-            }
-            xOffset = wCount * TILE_SIZE;
-            yOffset = hCount * TILE_SIZE;
-            for(int readY = 0; readY < TILE_SIZE; readY++) {
-                for(int readX = 0; readX < TILE_SIZE; readX++) {
-                    Color color = pr.getColor(readX + xOffset, readY + yOffset);
-                    pw.setColor(readX, readY, color);
-                }
-            }
-            toReturn[i] = wImg;
-            wCount++;
+    public ArrayList<Integer> getMetaTagged(MapTile.TileType type) {
+        return metaTags.computeIfAbsent(type, key -> new ArrayList<>());
+    }
+
+    /**
+     * Tags or untags tileID as type in the meta data of this TileSet, a tile can carry several tags.
+     * @param type the tag to set
+     * @param tileID the index of the tile
+     * @param remove true to remove the tag false to add it
+     */
+    public void setMetaTagID(MapTile.TileType type, int tileID, boolean remove) {
+        if(type == MapTile.TileType.DEFAULT) {
+            return;
         }
-        return toReturn;
+        ArrayList<Integer> tagged = getMetaTagged(type);
+        int index = tagged.indexOf(tileID);
+        if(!remove && index == -1) {
+            tagged.add(tileID);
+        } else if(remove && index != -1) {
+            tagged.remove(index);
+        }
+        setTypeFlag(tileID, type, !remove);
     }
 
     /**
-     * Compares two Images pixel by pixel for color, if every pixel is the same it returns true, otherwise false.
-     * @param a first image to compare
-     * @param b second image to compare
-     * @return true if the images are per pixel matches
+     * Returns the TileType flags tagged on tileID by the meta data, see MapTile.typeFlag.
+     * This is a direct lookup so tile types can be resolved in a single pass over a map.
+     * @param tileID the index of the tile
+     * @return the type flags of the tile
      */
-    public static boolean areImagesSame(Image a, Image b) {
-        if(a.getWidth() == b.getWidth() && a.getHeight() == b.getHeight()) {
-            for(int x=0; x<(int) a.getWidth(); x++) {
-                for(int y=0; y<(int) a.getHeight(); y++) {
-                    if(!a.getPixelReader().getColor(x, y).equals(b.getPixelReader().getColor(x, y))) return false;
-                }
-            }
+    public int getTypeFlags(int tileID) {
+        if(tileID < 0 || tileID >= typeFlags.length) {
+            return 0;
         }
-        return true;
+        return typeFlags[tileID];
     }
 
     /**
-     * Removes all Images in the original Image[] that match the Image provided in toRemove.
-     * toRemove is preserved at the end of the array, this is intended to be the 'blank' tile in the set.
-     * @param original the image array to search through
-     * @param toRemove the image to remove from the array
-     * @return returns a new image array where all images matching toRemove inside the original array are removed,
-     *         toRemove is appended
+     * Sets or clears the flag of type for tileID in the type lookup table, growing the table as needed.
+     * @param tileID the index of the tile
+     * @param type the type to set or clear
+     * @param value true to set the flag false to clear it
      */
-    private static Image[] removeSameElements(Image[] original, Image toRemove) {
-        ArrayList<Image> toReturn = new ArrayList<>();
-        for(Image i: original) {
-            if (!areImagesSame(i, toRemove)) {
-                toReturn.add(i);
+    private void setTypeFlag(int tileID, MapTile.TileType type, boolean value) {
+        if(tileID < 0) {
+            return;
+        }
+        if(tileID >= typeFlags.length) {
+            if(!value) {
+                return;
             }
+            typeFlags = Arrays.copyOf(typeFlags, Math.max(tileID + 1, getTotalTiles()));
+        }
+        if(value) {
+            typeFlags[tileID] |= MapTile.typeFlag(type);
+        } else {
+            typeFlags[tileID] &= ~MapTile.typeFlag(type);
         }
-        toReturn.add(toRemove);
-        toReturn.trimToSize();
-        Image[] newArray = new Image[toReturn.size()];
-        return toReturn.toArray(newArray);
     }
 
 }
-
@@ -0,0 +1,481 @@
+package org.dionthorn;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+
+/**
+ * TileSetData holds the sliced form of a tileset .png at a given tile size, the atlas of usable tiles,
+ * the TileIDs removed as 'blank' duplicates and the hash of every square of the source image.
+ * It is built once per path and tile size, either by slicing the source image or from the Cache folder, and is
+ * shared between every TileSet using that path and tile size so none of it may be modified after construction.
+ * See TileSet for how the source image is laid out.
+ */
+public class TileSetData {
+
+    private static final WritablePixelFormat<IntBuffer> ARGB_FORMAT = PixelFormat.getIntArgbInstance();
+    // set to false to force tileset slicing onto the calling thread, used to compare against the parallel path
+    public static boolean parallelSlicing = true;
+    private static final int CACHE_MAGIC = 0x54494C45; // "TILE"
+    private static final int CACHE_VERSION = 1;
+    private final String tileSetPath;
+    private final int tileSize;
+    private Image tileSetSrc;
+    private WritableImage atlas;
+    private int atlasColumns;
+    private int totalTiles;
+    private int[] removedTileIDs;
+    private int[] sourceTileHashes;
+    private int blankHash;
+
+    /**
+     * Constructor loads the sliced data of the .png at path from the Cache folder if it is still valid,
+     * otherwise it slices the source image and writes the result to the Cache folder.
+     * @param path the relative String that points to the desired .png file on disk
+     * @param TILE_SIZE the size of the squares to cut the image into
+     */
+    public TileSetData(String path, int TILE_SIZE) {
+        tileSetPath = path;
+        tileSize = TILE_SIZE;
+        long startTime = System.nanoTime();
+        URI cacheFile = getCacheURI();
+        long[] sourceStamp = getSourceStamp();
+        if(sourceStamp != null && loadCachedAtlas(cacheFile, sourceStamp)) {
+            Run.programLogger.log(Level.INFO, String.format("Loaded %s from tile cache in %d ms", path,
+                    (System.nanoTime() - startTime) / 1000000)
+            );
+        } else {
+            tileSetSrc = new Image(getSourceURI().toString());
+            int[] atlasBuffer = makeAtlas();
+            if (totalTiles == 0) {
+                Run.programLogger.log(Level.SEVERE, "NO TILES DETECTED");
+            } else {
+                Run.programLogger.log(Level.INFO, String.format("Tiles Removed From %s: %d", path,
+                        removedTileIDs.length - 1)
+                );
+                Run.programLogger.log(Level.INFO, String.format("Sliced %s (%dx%d) in %d ms %s", path,
+                        (int) tileSetSrc.getWidth(), (int) tileSetSrc.getHeight(),
+                        (System.nanoTime() - startTime) / 1000000, parallelSlicing ? "parallel" : "sequential")
+                );
+                if(sourceStamp != null) {
+                    saveCachedAtlas(cacheFile, sourceStamp, atlasBuffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the URI of the .png file of this tileset in either the GameData or Mod art folder.
+     * @return the uri of the source image
+     */
+    private URI getSourceURI() {
+        boolean useMOD = false;
+        if(tileSetPath.contains("MOD.")) {
+            useMOD = true;
+        }
+        return URI.create((useMOD ? Run.MOD_ART_PATH : Run.GAME_ART_PATH) + "/" + tileSetPath);
+    }
+
+    /**
+     * Returns the URI of the file in the Cache folder holding the sliced data of this tileset.
+     * @return the uri of the cache file
+     */
+    private URI getCacheURI() {
+        return URI.create(Run.CACHE_PATH + "/" + tileSetPath.replace('/', '_') + "_" + tileSize + ".tiles");
+    }
+
+    /**
+     * Returns the [size in bytes, last modified millis] of the source image used to validate the cache file,
+     * or null if there is no cache folder or the source can't be inspected.
+     * @return the stamp of the source image or null
+     */
+    private long[] getSourceStamp() {
+        if(Run.CACHE_PATH == null) {
+            return null;
+        }
+        try {
+            Path source = Path.of(getSourceURI());
+            return new long[] { Files.size(source), Files.getLastModifiedTime(source).toMillis() };
+        } catch (Exception e) {
+            Run.programLogger.log(Level.WARNING, "Unable to stamp tileset source for caching: " + tileSetPath);
+            return null;
+        }
+    }
+
+    /**
+     * Will try to fill this data from its cache file with a single sequential read.
+     * The cache file is only used if it was written for the same path, tile size and source size and modified time.
+     * Every count read from the file is checked against the bytes left before anything is allocated, so a corrupt
+     * or foreign file is rejected rather than allocating a huge array.
+     * @param cacheFile the uri of the cache file
+     * @param sourceStamp the [size, modified] stamp of the source image
+     * @return true if the cache file was valid and loaded
+     */
+    private boolean loadCachedAtlas(URI cacheFile, long[] sourceStamp) {
+        if(!FileOpUtils.doesFileExist(cacheFile)) {
+            return false;
+        }
+        ByteBuffer buffer = FileOpUtils.readFileBuffer(cacheFile);
+        if(buffer == null) {
+            return false;
+        }
+        try {
+            if(buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION) {
+                return false;
+            }
+            byte[] pathBytes = new byte[checkCount(buffer, buffer.getInt(), Byte.BYTES)];
+            buffer.get(pathBytes);
+            if(!new String(pathBytes, StandardCharsets.UTF_8).equals(tileSetPath) || buffer.getInt() != tileSize ||
+                    buffer.getLong() != sourceStamp[0] || buffer.getLong() != sourceStamp[1]) {
+                Run.programLogger.log(Level.INFO, "Tile cache is stale for: " + tileSetPath);
+                return false;
+            }
+            int cachedColumns = buffer.getInt();
+            int cachedTotal = buffer.getInt();
+            int cachedBlankHash = buffer.getInt();
+            int atlasWidth = buffer.getInt();
+            int atlasHeight = buffer.getInt();
+            if(cachedColumns <= 0 || cachedTotal < 0 || atlasWidth <= 0 || atlasHeight <= 0 ||
+                    (long) atlasWidth * atlasHeight > buffer.remaining() / Integer.BYTES) {
+                Run.programLogger.log(Level.WARNING, "Tile cache is corrupt for: " + tileSetPath);
+                return false;
+            }
+            int[] removed = readInts(buffer, buffer.getInt());
+            int[] hashes = readInts(buffer, buffer.getInt());
+            int[] atlasBuffer = readInts(buffer, atlasWidth * atlasHeight);
+            atlasColumns = cachedColumns;
+            totalTiles = cachedTotal;
+            blankHash = cachedBlankHash;
+            sourceTileHashes = hashes;
+            removedTileIDs = removed;
+            atlas = new WritableImage(atlasWidth, atlasHeight);
+            atlas.getPixelWriter().setPixels(0, 0, atlasWidth, atlasHeight, ARGB_FORMAT, atlasBuffer, 0, atlasWidth);
+            return true;
+        } catch (BufferUnderflowException e) {
+            Run.programLogger.log(Level.WARNING, "Tile cache is corrupt for: " + tileSetPath);
+            return false;
+        }
+    }
+
+    /**
+     * Will write the sliced data of this tileset to its cache file so the next launch can skip slicing.
+     * The file is written to a temporary file that replaces the old cache file in one step.
+     * @param cacheFile the uri of the cache file
+     * @param sourceStamp the [size, modified] stamp of the source image
+     * @param atlasBuffer the ARGB data of the atlas
+     */
+    private void saveCachedAtlas(URI cacheFile, long[] sourceStamp, int[] atlasBuffer) {
+        byte[] pathBytes = tileSetPath.getBytes(StandardCharsets.UTF_8);
+        int[] removed = removedTileIDs;
+        int headerBytes = (Integer.BYTES * 11) + (Long.BYTES * 2) + pathBytes.length;
+        int dataInts = removed.length + sourceTileHashes.length + atlasBuffer.length;
+        ByteBuffer buffer = ByteBuffer.allocate(headerBytes + (dataInts * Integer.BYTES));
+        buffer.putInt(CACHE_MAGIC).putInt(CACHE_VERSION);
+        buffer.putInt(pathBytes.length).put(pathBytes).putInt(tileSize);
+        buffer.putLong(sourceStamp[0]).putLong(sourceStamp[1]);
+        buffer.putInt(atlasColumns).putInt(totalTiles).putInt(blankHash);
+        buffer.putInt((int) atlas.getWidth()).putInt((int) atlas.getHeight());
+        buffer.putInt(removed.length);
+        buffer.asIntBuffer().put(removed);
+        buffer.position(buffer.position() + (removed.length * Integer.BYTES));
+        buffer.putInt(sourceTileHashes.length);
+        buffer.asIntBuffer().put(sourceTileHashes);
+        buffer.position(buffer.position() + (sourceTileHashes.length * Integer.BYTES));
+        buffer.asIntBuffer().put(atlasBuffer);
+        buffer.position(buffer.position() + (atlasBuffer.length * Integer.BYTES));
+        buffer.flip();
+        FileOpUtils.writeFileBuffer(cacheFile, buffer);
+    }
+
+    /**
+     * Returns count if buffer has at least count values of size bytes left, so counts read from a file can't ask
+     * for more than the file holds.
+     * @param buffer the buffer the values will be read from
+     * @param count the amount of values read from the file
+     * @param size the size in bytes of each value
+     * @return count
+     * @throws BufferUnderflowException if count is negative or larger than what is left in buffer
+     */
+    private static int checkCount(ByteBuffer buffer, int count, int size) {
+        if(count < 0 || count > buffer.remaining() / size) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * Reads count ints from the current position of buffer and advances its position past them.
+     * @param buffer the buffer to read from
+     * @param count the amount of ints to read
+     * @return the ints read
+     */
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] toReturn = new int[checkCount(buffer, count, Integer.BYTES)];
+        buffer.asIntBuffer().get(toReturn);
+        buffer.position(buffer.position() + (count * Integer.BYTES));
+        return toReturn;
+    }
+
+    /**
+     * Cuts the source image into squares of tileSize and hashes each square once from its ARGB data.
+     * Squares matching the 'blank' tile (the last square of the image) are recorded in removedTileIDList,
+     * a full compare is only done when the hash matches the 'blank' hash. The remaining squares are then copied
+     * in order into the atlas with the 'blank' tile appended at the end.
+     * The ARGB data of the whole image is read once, hashing and copying are split over the rows of tiles
+     * and run on the common fork join pool unless parallelSlicing is false.
+     * @return the ARGB data of the atlas
+     */
+    private int[] makeAtlas() {
+        int srcW = (int) tileSetSrc.getWidth();
+        int srcH = (int) tileSetSrc.getHeight();
+        int maxTilesWidth = (srcW / tileSize);
+        int maxTilesHeight = (srcH / tileSize);
+        int maxTiles = (maxTilesWidth * maxTilesHeight);
+        atlasColumns = Math.max(maxTilesWidth, 1);
+        sourceTileHashes = new int[maxTiles];
+        if(maxTiles == 0) {
+            totalTiles = 0;
+            removedTileIDs = new int[0];
+            atlas = new WritableImage(1, 1);
+            return new int[1];
+        }
+        int[] srcBuffer = new int[srcW * srcH];
+        tileSetSrc.getPixelReader().getPixels(0, 0, srcW, srcH, ARGB_FORMAT, srcBuffer, 0, srcW);
+        int blankID = maxTiles - 1;
+        blankHash = hashSourceTile(srcBuffer, srcW, blankID, maxTilesWidth);
+        // hash every square and flag the ones matching the 'blank' tile
+        boolean[] blankTiles = new boolean[maxTiles];
+        forEachTileRow(maxTilesHeight, tileRow -> {
+            for(int step = tileRow * maxTilesWidth; step < (tileRow + 1) * maxTilesWidth; step++) {
+                sourceTileHashes[step] = hashSourceTile(srcBuffer, srcW, step, maxTilesWidth);
+                blankTiles[step] = sourceTileHashes[step] == blankHash &&
+                        areSourceTilesSame(srcBuffer, srcW, step, blankID, maxTilesWidth);
+            }
+        });
+        // assigning atlas ids has to stay in TileID order so it is done sequentially, it is only one pass over ints
+        int[] atlasIDs = new int[maxTiles];
+        ArrayList<Integer> removedTileIDList = new ArrayList<>();
+        int kept = 0;
+        for(int step = 0; step < maxTiles; step++) {
+            if(blankTiles[step]) {
+                removedTileIDList.add(step);
+                atlasIDs[step] = -1;
+            } else {
+                atlasIDs[step] = kept++;
+            }
+        }
+        atlasIDs[blankID] = kept++;
+        totalTiles = kept;
+        removedTileIDs = removedTileIDList.stream().mapToInt(Integer::intValue).toArray();
+        // the atlas can never hold more tiles than the source image so it is packed into a buffer of that size
+        int atlasWidth = atlasColumns * tileSize;
+        int atlasHeight = ((totalTiles + atlasColumns - 1) / atlasColumns) * tileSize;
+        int[] atlasBuffer = new int[atlasWidth * atlasHeight];
+        forEachTileRow(maxTilesHeight, tileRow -> {
+            for(int step = tileRow * maxTilesWidth; step < (tileRow + 1) * maxTilesWidth; step++) {
+                if(atlasIDs[step] != -1) {
+                    packTile(srcBuffer, srcW, step, maxTilesWidth, atlasBuffer, atlasWidth, atlasIDs[step]);
+                }
+            }
+        });
+        atlas = new WritableImage(atlasWidth, atlasHeight);
+        atlas.getPixelWriter().setPixels(0, 0, atlasWidth, atlasHeight, ARGB_FORMAT, atlasBuffer, 0, atlasWidth);
+        return atlasBuffer;
+    }
+
+    /**
+     * Runs rowOp once for every row of tiles, on the common fork join pool when parallelSlicing is true.
+     * @param tileRows the amount of rows of tiles in the source image
+     * @param rowOp the operation to run for a row of tiles
+     */
+    private static void forEachTileRow(int tileRows, IntConsumer rowOp) {
+        if(parallelSlicing && tileRows > 1) {
+            ForkJoinPool.commonPool().invoke(new TileRowTask(rowOp, 0, tileRows));
+        } else {
+            for(int tileRow = 0; tileRow < tileRows; tileRow++) {
+                rowOp.accept(tileRow);
+            }
+        }
+    }
+
+    /**
+     * Returns the hash of the ARGB data of the square at sourceTileID, matches Arrays.hashCode of the square.
+     * @param srcBuffer the ARGB data of the full tileset image
+     * @param srcW the width in pixels of the full tileset image
+     * @param sourceTileID the index of the square in the original full image
+     * @param maxTilesWidth the amount of squares per row of the image
+     * @return the hash of the square
+     */
+    private int hashSourceTile(int[] srcBuffer, int srcW, int sourceTileID, int maxTilesWidth) {
+        int start = ((sourceTileID / maxTilesWidth) * tileSize * srcW) + ((sourceTileID % maxTilesWidth) * tileSize);
+        int hash = 1;
+        for(int row = 0; row < tileSize; row++) {
+            int rowStart = start + (row * srcW);
+            for(int i = rowStart; i < rowStart + tileSize; i++) {
+                hash = 31 * hash + srcBuffer[i];
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Compares two squares of the full tileset image row by row, if every pixel is the same it returns true.
+     * @param srcBuffer the ARGB data of the full tileset image
+     * @param srcW the width in pixels of the full tileset image
+     * @param a the index of the first square to compare
+     * @param b the index of the second square to compare
+     * @param maxTilesWidth the amount of squares per row of the image
+     * @return true if the squares are per pixel matches
+     */
+    private boolean areSourceTilesSame(int[] srcBuffer, int srcW, int a, int b, int maxTilesWidth) {
+        int aStart = ((a / maxTilesWidth) * tileSize * srcW) + ((a % maxTilesWidth) * tileSize);
+        int bStart = ((b / maxTilesWidth) * tileSize * srcW) + ((b % maxTilesWidth) * tileSize);
+        for(int row = 0; row < tileSize; row++) {
+            int aRow = aStart + (row * srcW);
+            int bRow = bStart + (row * srcW);
+            if(!Arrays.equals(srcBuffer, aRow, aRow + tileSize, srcBuffer, bRow, bRow + tileSize)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the ARGB data of the square at sourceTileID into the atlas buffer at the location of tileID.
+     * @param srcBuffer the ARGB data of the full tileset image
+     * @param srcW the width in pixels of the full tileset image
+     * @param sourceTileID the index of the square in the original full image
+     * @param maxTilesWidth the amount of squares per row of the image
+     * @param atlasBuffer the ARGB buffer of the atlas
+     * @param atlasWidth the width in pixels of the atlas
+     * @param tileID the index of the tile in the atlas
+     */
+    private void packTile(int[] srcBuffer, int srcW, int sourceTileID, int maxTilesWidth,
+                          int[] atlasBuffer, int atlasWidth, int tileID) {
+        int srcStart = ((sourceTileID / maxTilesWidth) * tileSize * srcW) + ((sourceTileID % maxTilesWidth) * tileSize);
+        int dstX = (tileID % atlasColumns) * tileSize;
+        int dstY = (tileID / atlasColumns) * tileSize;
+        for(int row = 0; row < tileSize; row++) {
+            System.arraycopy(srcBuffer, srcStart + (row * srcW), atlasBuffer, (dstY + row) * atlasWidth + dstX,
+                    tileSize
+            );
+        }
+    }
+
+    // Getters
+    /**
+     * Returns the relative path of the source .png as a String object.
+     * @return the tileset path as a string
+     */
+    public String getTileSetPath() { return tileSetPath; }
+
+    /**
+     * Returns the size in pixels of the square tiles.
+     * @return the tile size in pixels
+     */
+    public int getTileSize() { return tileSize; }
+
+    /**
+     * Returns the full source image, it is only loaded when first needed if the data was read from the tile cache.
+     * @return the image of the original full tileset
+     */
+    public Image getTileSetSrc() {
+        if(tileSetSrc == null) {
+            tileSetSrc = new Image(getSourceURI().toString());
+        }
+        return tileSetSrc;
+    }
+
+    /**
+     * Returns the atlas image holding every usable tile.
+     * @return the atlas image
+     */
+    public Image getAtlas() { return atlas; }
+
+    /**
+     * Returns the amount of tiles per row of the atlas.
+     * @return the atlas columns
+     */
+    public int getAtlasColumns() { return atlasColumns; }
+
+    /**
+     * Returns the count of the usable tiles in the atlas.
+     * @return the total usable tiles
+     */
+    public int getTotalTiles() { return totalTiles; }
+
+    /**
+     * Returns the shared sorted array of TileIDs of the source image that were removed as 'blank' duplicates.
+     * The array must not be modified.
+     * @return the removed tile ids
+     */
+    public int[] getRemovedTileIDs() { return removedTileIDs; }
+
+    /**
+     * Returns true if the square at sourceTileID of the original full image matches the 'blank' tile.
+     * Uses the hashes computed while slicing, the removed list resolves any hash collision.
+     * @param sourceTileID the index of the square in the original full image
+     * @return true if the square is a match of the 'blank' tile
+     */
+    public boolean isSourceTileBlank(int sourceTileID) {
+        if(sourceTileID < 0 || sourceTileID >= sourceTileHashes.length) {
+            return false;
+        }
+        return sourceTileHashes[sourceTileID] == blankHash && Arrays.binarySearch(removedTileIDs, sourceTileID) >= 0;
+    }
+
+    /**
+     * Returns the approximate heap used by this data in bytes, the atlas and source image pixels dominate it.
+     * The source image is always counted, estimated from the amount of squares, as it can be loaded at any time.
+     * @return the approximate size in bytes
+     */
+    public long getApproximateBytes() {
+        long atlasBytes = (long) atlas.getWidth() * (long) atlas.getHeight() * Integer.BYTES;
+        long sourceBytes = (long) sourceTileHashes.length * tileSize * tileSize * Integer.BYTES;
+        return atlasBytes + sourceBytes + ((long) (removedTileIDs.length + sourceTileHashes.length) * Integer.BYTES);
+    }
+
+    /**
+     * Fork join task that splits a range of tile rows in half until a single row is left and runs rowOp on it.
+     */
+    private static class TileRowTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final IntConsumer rowOp;
+        private final int fromRow;
+        private final int toRow;
+
+        TileRowTask(IntConsumer rowOp, int fromRow, int toRow) {
+            this.rowOp = rowOp;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if(toRow - fromRow <= 1) {
+                for(int tileRow = fromRow; tileRow < toRow; tileRow++) {
+                    rowOp.accept(tileRow);
+                }
+            } else {
+                int midRow = (fromRow + toRow) >>> 1;
+                invokeAll(new TileRowTask(rowOp, fromRow, midRow), new TileRowTask(rowOp, midRow, toRow));
+            }
+        }
+    }
+
+}